@@ -1,5 +1,6 @@
 plugins {
     id("java")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "org.example"
@@ -14,6 +15,32 @@ dependencies {
     testImplementation("org.junit.jupiter:junit-jupiter")
 }
 
+// The Vector API scanner needs the incubating jdk.incubator.vector module, so
+// it is only built (and the module only added) when building with -Pvector.
+val vector = providers.gradleProperty("vector").map { it != "false" }.getOrElse(false)
+
+if (vector) {
+    sourceSets.main {
+        java.srcDir("src/vector/java")
+    }
+
+    tasks.withType<JavaCompile> {
+        options.compilerArgs.addAll(listOf("--add-modules", "jdk.incubator.vector"))
+    }
+}
+
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+    if (vector) {
+        jvmArgs("--add-modules", "jdk.incubator.vector")
+    }
+}
+
+jmh {
+    if (vector) {
+        jvmArgsAppend.addAll("--add-modules", "jdk.incubator.vector")
+    }
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+}
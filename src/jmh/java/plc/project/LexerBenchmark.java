@@ -0,0 +1,89 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the table-driven {@link Lexer} against {@link RegexLexer} on a
+ * generated ASCII program. Throughput in bytes per second is the source size
+ * divided by the reported time per operation.
+ *
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LexerBenchmark {
+
+    @Param({"1048576"})
+    public int size;
+
+    /**
+     * Whether runs are scanned with the Vector API, see
+     * {@link Lexer#setVectorized(boolean)}.
+     */
+    @Param({"true", "false"})
+    public boolean vectorized;
+
+    private String source;
+    private ByteBuffer bytes;
+
+    @Setup
+    public void setup() {
+        Lexer.setVectorized(vectorized);
+        source = generate(size);
+        bytes = ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public TokenBuffer lexBuffer() {
+        return new Lexer(source).lexBuffer();
+    }
+
+    @Benchmark
+    public List<Token> lex() {
+        return new Lexer(source).lex();
+    }
+
+    @Benchmark
+    public TokenBuffer lexBytes() {
+        return new Lexer(bytes.duplicate()).lexBuffer();
+    }
+
+    @Benchmark
+    public List<Token> regex() {
+        return RegexLexer.lex(source);
+    }
+
+    /**
+     * Generates a program of roughly the given number of characters made of
+     * repeated methods, each using every kind of token.
+     */
+    static String generate(int size) {
+        StringBuilder builder = new StringBuilder(size + 256);
+        for (int i = 0; builder.length() < size; i++) {
+            builder.append("DEF method").append(i).append("(first, second) DO\n")
+                    .append("    LET total = first + second * 42 - 3.14;\n")
+                    .append("    IF total >= 10 AND flag != FALSE DO\n")
+                    .append("        print(\"total: \\n\" + total.stringify());\n")
+                    .append("    ELSE\n")
+                    .append("        letter = 'c';\n")
+                    .append("    END\n")
+                    .append("    RETURN total;\n")
+                    .append("END\n\n");
+        }
+        return builder.toString();
+    }
+
+}
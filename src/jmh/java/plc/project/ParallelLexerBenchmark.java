@@ -0,0 +1,56 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how {@link Lexer#lexParallel(String, ForkJoinPool)} scales with the
+ * number of threads on a large generated program, against sequential lexing
+ * of the same source.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParallelLexerBenchmark {
+
+    @Param({"16777216"})
+    public int size;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int threads;
+
+    private String source;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setup() {
+        source = LexerBenchmark.generate(size);
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public TokenBuffer sequential() {
+        return new Lexer(source).lexBuffer();
+    }
+
+    @Benchmark
+    public TokenBuffer parallel() {
+        return Lexer.lexParallel(source, pool);
+    }
+
+}
@@ -0,0 +1,60 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A straightforward regex-based lexer for the same grammar as {@link Lexer},
+ * used as a baseline by {@link LexerBenchmark}. It assumes valid input and
+ * does not report errors the way {@link Lexer} does.
+ */
+final class RegexLexer {
+
+    private static final Pattern TOKEN = Pattern.compile(
+            "(?<whitespace>[ \b\n\r\t]+)" +
+            "|(?<identifier>[A-Za-z_][A-Za-z0-9_-]*)" +
+            "|(?<decimal>[+\\-]?[0-9]+\\.[0-9]+)" +
+            "|(?<integer>[+\\-]?[0-9]+)" +
+            "|(?<character>'([^'\\\\\\n\\r]|\\\\[bnrt'\"\\\\])')" +
+            "|(?<string>\"([^\"\\\\\\n\\r]|\\\\[bnrt'\"\\\\])*\")" +
+            "|(?<operator>[<>!=]=?|.)",
+            Pattern.DOTALL);
+
+    private RegexLexer() {}
+
+    static List<Token> lex(String input) {
+        List<Token> tokens = new ArrayList<>();
+        Matcher matcher = TOKEN.matcher(input);
+        int index = 0;
+        while (index < input.length()) {
+            matcher.region(index, input.length());
+            if (!matcher.lookingAt()) {
+                throw new ParseException("Unexpected character.", index);
+            }
+            if (matcher.group("whitespace") == null) {
+                tokens.add(new Token(typeOf(matcher), matcher.group(), index));
+            }
+            index = matcher.end();
+        }
+        return tokens;
+    }
+
+    private static Token.Type typeOf(Matcher matcher) {
+        if (matcher.group("identifier") != null) {
+            return Token.Type.IDENTIFIER;
+        } else if (matcher.group("decimal") != null) {
+            return Token.Type.DECIMAL;
+        } else if (matcher.group("integer") != null) {
+            return Token.Type.INTEGER;
+        } else if (matcher.group("character") != null) {
+            return Token.Type.CHARACTER;
+        } else if (matcher.group("string") != null) {
+            return Token.Type.STRING;
+        } else {
+            return Token.Type.OPERATOR;
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+package plc.project;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The result of analyzing a source with {@link Analyzer#analyze}, which holds
+ * the types, variables and functions the Analyzer would otherwise set on the
+ * nodes themselves. Since the tree is not modified, a single parsed source can
+ * be analyzed any number of times, concurrently and under different scopes,
+ * and each result can be dropped independently of the tree.
+ *
+ * Results are stored in arrays indexed by the id each node was given by the
+ * {@link Parser}, which are sized by the id of the source, so a source is
+ * never walked up front and lazily parsed bodies are only parsed when the
+ * Analyzer reaches them. The first node to be set at an id owns its entry.
+ * Nodes without an id (such as those built by hand, by {@link AstInterner}
+ * or by {@link AstSerializer}), beyond the source's id, or whose entry is
+ * owned by another node (after {@link ParsedSource#edit}), are kept in
+ * identity maps instead. A node shared by {@link AstInterner} has a single
+ * result.
+ *
+ * A node which is not part of the analyzed source has no results, and its
+ * getters return null.
+ */
+public final class Analysis {
+
+    private final Ast root;
+    private final Ast[] nodes;
+    private final Environment.Type[] types;
+    private final Object[] symbols;
+    private final Map<Ast, Environment.Type> otherTypes = new IdentityHashMap<>();
+    private final Map<Ast, Object> otherSymbols = new IdentityHashMap<>();
+
+    Analysis(Ast root) {
+        this.root = root;
+        int size = root.id + 1;
+        this.nodes = new Ast[size];
+        this.types = new Environment.Type[size];
+        this.symbols = new Object[size];
+    }
+
+    public Ast getRoot() {
+        return root;
+    }
+
+    public Environment.Type getType(Ast.Expr ast) {
+        int index = index(ast, false);
+        return index != -1 ? types[index] : otherTypes.get(ast);
+    }
+
+    public Environment.Variable getVariable(Ast.Field ast) {
+        return (Environment.Variable) getSymbol(ast);
+    }
+
+    public Environment.Variable getVariable(Ast.Stmt.Declaration ast) {
+        return (Environment.Variable) getSymbol(ast);
+    }
+
+    public Environment.Variable getVariable(Ast.Expr.Access ast) {
+        return (Environment.Variable) getSymbol(ast);
+    }
+
+    public Environment.Function getFunction(Ast.Method ast) {
+        return (Environment.Function) getSymbol(ast);
+    }
+
+    public Environment.Function getFunction(Ast.Expr.Function ast) {
+        return (Environment.Function) getSymbol(ast);
+    }
+
+    void setType(Ast.Expr ast, Environment.Type type) {
+        int index = index(ast, true);
+        if (index != -1) {
+            types[index] = type;
+        } else {
+            otherTypes.put(ast, type);
+        }
+    }
+
+    void setSymbol(Ast ast, Object symbol) {
+        int index = index(ast, true);
+        if (index != -1) {
+            symbols[index] = symbol;
+        } else {
+            otherSymbols.put(ast, symbol);
+        }
+    }
+
+    private Object getSymbol(Ast ast) {
+        int index = index(ast, false);
+        return index != -1 ? symbols[index] : otherSymbols.get(ast);
+    }
+
+    /**
+     * Returns the entry of the node in the arrays, or -1 if its results are
+     * kept in the maps. A free entry is only taken when setting a result.
+     */
+    private int index(Ast ast, boolean set) {
+        int id = ast.id;
+        if (id < 0 || id >= nodes.length) {
+            return -1;
+        }
+        Ast owner = nodes[id];
+        if (owner == ast) {
+            return id;
+        } else if (owner == null && set) {
+            nodes[id] = ast;
+            return id;
+        }
+        return -1;
+    }
+
+}
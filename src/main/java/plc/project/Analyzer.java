@@ -2,8 +2,10 @@ package plc.project;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,8 +13,27 @@ public final class Analyzer implements Ast.Visitor<Environment.Type> {
 
     public Scope scope;
     private Ast.Method method;
+    private final Analysis analysis;
+    private final Isolate isolate;
 
     public Analyzer(Scope parent) {
+        this(parent, Environment.getIsolate());
+    }
+
+    /**
+     * Creates an analyzer which looks type names up in the given isolate.
+     */
+    public Analyzer(Scope parent, Isolate isolate) {
+        this(parent, isolate, null);
+    }
+
+    /**
+     * Creates an analyzer which records its results in the given analysis
+     * instead of setting them on the nodes, or on the nodes if it is null.
+     */
+    private Analyzer(Scope parent, Isolate isolate, Analysis analysis) {
+        this.analysis = analysis;
+        this.isolate = isolate;
         scope = new Scope(parent);
         scope.defineFunction("print", "System.out.println", Arrays.asList(Environment.Type.ANY), Environment.Type.NIL, args -> Environment.NIL);
     }
@@ -21,6 +42,20 @@ public final class Analyzer implements Ast.Visitor<Environment.Type> {
         return scope;
     }
 
+    /**
+     * Analyzes a source without modifying it, returning the types, variables
+     * and functions that would have been set on its nodes in an analysis.
+     */
+    public static Analysis analyze(Ast.Source ast, Scope parent) {
+        return analyze(ast, parent, Environment.getIsolate());
+    }
+
+    public static Analysis analyze(Ast.Source ast, Scope parent, Isolate isolate) {
+        Analysis analysis = new Analysis(ast);
+        new Analyzer(parent, isolate, analysis).visit(ast);
+        return analysis;
+    }
+
     @Override
     public Environment.Type visit(Ast.Source ast) {
         for (Ast.Field field : ast.getFields()) {
@@ -43,7 +78,7 @@ public final class Analyzer implements Ast.Visitor<Environment.Type> {
     public Environment.Type visit(Ast.Field ast) {
         Environment.Type type;
         try {
-            type = Environment.getType(ast.getTypeName());
+            type = isolate.getType(ast.getTypeName());
         } catch (RuntimeException e) {
             throw new RuntimeException("Unknown type specified for field: " + ast.getTypeName());
         }
@@ -56,7 +91,7 @@ public final class Analyzer implements Ast.Visitor<Environment.Type> {
         Environment.Variable variable = scope.defineVariable(
                 ast.getName(), ast.getName(), type, Environment.NIL
         );
-        ast.setVariable(variable);
+        setVariable(ast, variable);
 
         return null;
     }
@@ -65,13 +100,13 @@ public final class Analyzer implements Ast.Visitor<Environment.Type> {
     public Environment.Type visit(Ast.Method ast) {
         List<Environment.Type> parameterTypes = new ArrayList<>();
         for (String typeName : ast.getParameterTypeNames()) {
-            parameterTypes.add(Environment.getType(typeName));
+            parameterTypes.add(isolate.getType(typeName));
         }
         Environment.Type returnType = ast.getReturnTypeName()
-                .map(Environment::getType)
+                .map(isolate::getType)
                 .orElse(Environment.Type.NIL);
         Environment.Function function = scope.defineFunction(ast.getName(), ast.getName(), parameterTypes, returnType, args -> Environment.NIL);
-        ast.setFunction(function);
+        setFunction(ast, function);
         Scope originalScope = scope;
         scope = new Scope(scope);
         Ast.Method previousMethod = this.method;
@@ -101,7 +136,7 @@ public final class Analyzer implements Ast.Visitor<Environment.Type> {
         Environment.Type type;
         if (ast.getTypeName().isPresent()) {
             try {
-                type = Environment.getType(ast.getTypeName().get());
+                type = isolate.getType(ast.getTypeName().get());
             } catch (RuntimeException e) {
                 throw new RuntimeException("Unknown type specified: " + ast.getTypeName().get());
             }
@@ -111,7 +146,7 @@ public final class Analyzer implements Ast.Visitor<Environment.Type> {
             throw new RuntimeException("Declaration must have either a type or an initializer.");
         }
         Environment.Variable variable = scope.defineVariable(ast.getName(), ast.getName(), type, Environment.NIL);
-        ast.setVariable(variable);
+        setVariable(ast, variable);
         if (ast.getValue().isPresent()) {
             Environment.Type valueType = visit(ast.getValue().get());
             requireAssignable(type, valueType);
@@ -190,7 +225,7 @@ public final class Analyzer implements Ast.Visitor<Environment.Type> {
         }
 
         // Get the expected return type of the method
-        Environment.Type returnType = method.getFunction().getReturnType();
+        Environment.Type returnType = (analysis != null ? analysis.getFunction(method) : method.getFunction()).getReturnType();
 
         // Validate the return value's type
         Environment.Type valueType = visit(ast.getValue());
@@ -203,7 +238,7 @@ public final class Analyzer implements Ast.Visitor<Environment.Type> {
     public Environment.Type visit(Ast.Expr.Literal ast) {
         Object value = ast.getLiteral();
         if (value instanceof Boolean) {
-            ast.setType(Environment.Type.BOOLEAN);
+            setType(ast, Environment.Type.BOOLEAN);
             return Environment.Type.BOOLEAN;
         } else if (value instanceof BigInteger) {
             BigInteger bigIntValue = (BigInteger) value;
@@ -211,20 +246,20 @@ public final class Analyzer implements Ast.Visitor<Environment.Type> {
                     bigIntValue.compareTo(BigInteger.valueOf(Integer.MAX_VALUE)) > 0) {
                 throw new RuntimeException("Integer literal out of range");
             }
-            ast.setType(Environment.Type.INTEGER);
+            setType(ast, Environment.Type.INTEGER);
             return Environment.Type.INTEGER;
         } else if (value instanceof Double) {
-            ast.setType(Environment.Type.DECIMAL);
+            setType(ast, Environment.Type.DECIMAL);
             return Environment.Type.DECIMAL;
         } else if (value instanceof Character) {
-            ast.setType(Environment.Type.CHARACTER);
+            setType(ast, Environment.Type.CHARACTER);
             return Environment.Type.CHARACTER;
         } else if (value instanceof String) {
-            ast.setType(Environment.Type.STRING);
+            setType(ast, Environment.Type.STRING);
             return Environment.Type.STRING;
         }
         else if (ast.getLiteral() instanceof BigDecimal) {  // Add this case
-            ast.setType(Environment.Type.DECIMAL);
+            setType(ast, Environment.Type.DECIMAL);
             return Environment.Type.DECIMAL;
         }
             throw new RuntimeException("Unsupported literal type.");
@@ -233,13 +268,36 @@ public final class Analyzer implements Ast.Visitor<Environment.Type> {
     @Override
     public Environment.Type visit(Ast.Expr.Group ast) {
         Environment.Type innerType = visit(ast.getExpression());
-        ast.setType(innerType);
+        setType(ast, innerType);
         return innerType;
     }
 
+    /**
+     * Checks a chain of left nested binary expressions bottom up in a loop,
+     * so long chains do not recurse once per operator.
+     */
     @Override
     public Environment.Type visit(Ast.Expr.Binary ast) {
-        Environment.Type leftType = visit(ast.getLeft());
+        if (!(ast.getLeft() instanceof Ast.Expr.Binary)) {
+            return check(ast, visit(ast.getLeft()));
+        }
+        Deque<Ast.Expr.Binary> chain = new ArrayDeque<>();
+        Ast.Expr expr = ast;
+        while (expr instanceof Ast.Expr.Binary) {
+            chain.push((Ast.Expr.Binary) expr);
+            expr = ((Ast.Expr.Binary) expr).getLeft();
+        }
+        Environment.Type type = visit(expr);
+        while (!chain.isEmpty()) {
+            type = check(chain.pop(), type);
+        }
+        return type;
+    }
+
+    /**
+     * Checks a binary expression given the type of its left operand.
+     */
+    private Environment.Type check(Ast.Expr.Binary ast, Environment.Type leftType) {
         Environment.Type rightType = visit(ast.getRight());
         String operator = ast.getOperator();
         switch (operator) {
@@ -248,7 +306,7 @@ public final class Analyzer implements Ast.Visitor<Environment.Type> {
                 if (!leftType.equals(Environment.Type.BOOLEAN) || !rightType.equals(Environment.Type.BOOLEAN)) {
                     throw new RuntimeException("Both operands of " + operator + " must be Boolean.");
                 }
-                ast.setType(Environment.Type.BOOLEAN);
+                setType(ast, Environment.Type.BOOLEAN);
                 return Environment.Type.BOOLEAN;
             case "<":
             case "<=":
@@ -259,17 +317,17 @@ public final class Analyzer implements Ast.Visitor<Environment.Type> {
                 if (!leftType.equals(rightType) || !leftType.equals(Environment.Type.COMPARABLE)) {
                     throw new RuntimeException("Both operands of " + operator + " must be comparable and of the same type.");
                 }
-                ast.setType(Environment.Type.BOOLEAN);
+                setType(ast, Environment.Type.BOOLEAN);
                 return Environment.Type.BOOLEAN;
             case "+":
                 if (leftType.equals(Environment.Type.STRING) || rightType.equals(Environment.Type.STRING)) {
-                    ast.setType(Environment.Type.STRING);
+                    setType(ast, Environment.Type.STRING);
                     return Environment.Type.STRING;
                 } else if (leftType.equals(Environment.Type.INTEGER) && rightType.equals(Environment.Type.INTEGER)) {
-                    ast.setType(Environment.Type.INTEGER);
+                    setType(ast, Environment.Type.INTEGER);
                     return Environment.Type.INTEGER;
                 } else if (leftType.equals(Environment.Type.DECIMAL) && rightType.equals(Environment.Type.DECIMAL)) {
-                    ast.setType(Environment.Type.DECIMAL);
+                    setType(ast, Environment.Type.DECIMAL);
                     return Environment.Type.DECIMAL;
                 } else {
                     throw new RuntimeException("Invalid types for addition.");
@@ -278,10 +336,10 @@ public final class Analyzer implements Ast.Visitor<Environment.Type> {
             case "*":
             case "/":
                 if (leftType.equals(Environment.Type.INTEGER) && rightType.equals(Environment.Type.INTEGER)) {
-                    ast.setType(Environment.Type.INTEGER);
+                    setType(ast, Environment.Type.INTEGER);
                     return Environment.Type.INTEGER;
                 } else if (leftType.equals(Environment.Type.DECIMAL) && rightType.equals(Environment.Type.DECIMAL)) {
-                    ast.setType(Environment.Type.DECIMAL);
+                    setType(ast, Environment.Type.DECIMAL);
                     return Environment.Type.DECIMAL;
                 } else {
                     throw new RuntimeException("Invalid types for arithmetic operator " + operator);
@@ -303,7 +361,7 @@ public final class Analyzer implements Ast.Visitor<Environment.Type> {
         } else {
             variable = scope.lookupVariable(ast.getName());
         }
-        ast.setVariable(variable);
+        setVariable(ast, variable);
         return variable.getType();
     }
 
@@ -331,10 +389,58 @@ public final class Analyzer implements Ast.Visitor<Environment.Type> {
                 requireAssignable(function.getParameterTypes().get(i), argumentType);
             }
         }
-        ast.setFunction(function);
+        setFunction(ast, function);
         return function.getReturnType();
     }
 
+    private void setType(Ast.Expr ast, Environment.Type type) {
+        if (analysis != null) {
+            analysis.setType(ast, type);
+        } else {
+            ast.setType(type);
+        }
+    }
+
+    private void setVariable(Ast.Field ast, Environment.Variable variable) {
+        if (analysis != null) {
+            analysis.setSymbol(ast, variable);
+        } else {
+            ast.setVariable(variable);
+        }
+    }
+
+    private void setVariable(Ast.Stmt.Declaration ast, Environment.Variable variable) {
+        if (analysis != null) {
+            analysis.setSymbol(ast, variable);
+        } else {
+            ast.setVariable(variable);
+        }
+    }
+
+    private void setVariable(Ast.Expr.Access ast, Environment.Variable variable) {
+        if (analysis != null) {
+            analysis.setSymbol(ast, variable);
+        } else {
+            ast.setVariable(variable);
+        }
+    }
+
+    private void setFunction(Ast.Method ast, Environment.Function function) {
+        if (analysis != null) {
+            analysis.setSymbol(ast, function);
+        } else {
+            ast.setFunction(function);
+        }
+    }
+
+    private void setFunction(Ast.Expr.Function ast, Environment.Function function) {
+        if (analysis != null) {
+            analysis.setSymbol(ast, function);
+        } else {
+            ast.setFunction(function);
+        }
+    }
+
     public static void requireAssignable(Environment.Type target, Environment.Type type) {
         if (target.equals(Environment.Type.ANY)) {
             return;
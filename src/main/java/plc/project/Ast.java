@@ -1,5 +1,6 @@
 package plc.project;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -10,6 +11,30 @@ import java.util.Optional;
  */
 public abstract class Ast {
 
+    /**
+     * The cached content hash, or 0 if it has not been computed.
+     */
+    private long contentHash = 0;
+
+    /**
+     * The id given to this node by the {@link Parser} which created it, or -1
+     * if it was created some other way. See {@link Analysis}.
+     */
+    int id = -1;
+
+    /**
+     * Returns a 64 bit hash of the content of this node and its children,
+     * which is the same in every process and can be used as a cache key.
+     * Annotations set by the Analyzer are not included. The hash is cached
+     * on the node, so after a reparse only new nodes are hashed again.
+     */
+    public final long getContentHash() {
+        if (contentHash == 0) {
+            contentHash = ContentHash.compute(this);
+        }
+        return contentHash;
+    }
+
     public static final class Source extends Ast {
 
         private final List<Field> fields;
@@ -35,6 +60,11 @@ public abstract class Ast {
                     methods.equals(((Source) obj).methods);
         }
 
+        @Override
+        public int hashCode() {
+            return Objects.hash(fields, methods);
+        }
+
         @Override
         public String toString() {
             return "Ast.Source{" +
@@ -70,6 +100,11 @@ public abstract class Ast {
                     value.equals(((Field) obj).value);
         }
 
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, value);
+        }
+
         @Override
         public String toString() {
             return "Ast.Field{" +
@@ -112,6 +147,11 @@ public abstract class Ast {
                     statements.equals(((Method) obj).statements);
         }
 
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, parameters, statements);
+        }
+
         @Override
         public String toString() {
             return "Ast.Method{" +
@@ -143,6 +183,11 @@ public abstract class Ast {
                         expression.equals(((Expression) obj).expression);
             }
 
+            @Override
+            public int hashCode() {
+                return Objects.hash(expression);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Stmt.Expression{" +
@@ -177,6 +222,11 @@ public abstract class Ast {
                         value.equals(((Declaration) obj).value);
             }
 
+            @Override
+            public int hashCode() {
+                return Objects.hash(name, value);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Stmt.Declaration{" +
@@ -212,6 +262,11 @@ public abstract class Ast {
                         value.equals(((Assignment) obj).value);
             }
 
+            @Override
+            public int hashCode() {
+                return Objects.hash(receiver, value);
+            }
+
             @Override
             public final String toString() {
                 return "Ast.Stmt.Assignment{" +
@@ -255,6 +310,11 @@ public abstract class Ast {
                         elseStatements.equals(((If) obj).elseStatements);
             }
 
+            @Override
+            public int hashCode() {
+                return Objects.hash(condition, thenStatements, elseStatements);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Stmt.If{" +
@@ -298,6 +358,11 @@ public abstract class Ast {
                         statements.equals(((For) obj).statements);
             }
 
+            @Override
+            public int hashCode() {
+                return Objects.hash(name, value, statements);
+            }
+
             @Override
             public String toString() {
                 return "For{" +
@@ -334,6 +399,11 @@ public abstract class Ast {
                         statements.equals(((While) obj).statements);
             }
 
+            @Override
+            public int hashCode() {
+                return Objects.hash(condition, statements);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Stmt.While{" +
@@ -362,6 +432,11 @@ public abstract class Ast {
                         value.equals(((Return) obj).value);
             }
 
+            @Override
+            public int hashCode() {
+                return Objects.hash(value);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Stmt.Return{" +
@@ -375,6 +450,23 @@ public abstract class Ast {
 
     public static abstract class Expr extends Ast {
 
+        /**
+         * The cached hash code, or 0 if it has not been computed. Expressions
+         * are not modified once created (a function keeps an unmodifiable copy
+         * of its arguments), so their hash code never changes.
+         */
+        private int hash = 0;
+
+        @Override
+        public final int hashCode() {
+            if (hash == 0) {
+                hash = computeHash();
+            }
+            return hash;
+        }
+
+        abstract int computeHash();
+
         public static final class Literal extends Expr {
 
             private final Object literal;
@@ -389,10 +481,16 @@ public abstract class Ast {
 
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Literal &&
+                return this == obj || obj instanceof Literal &&
+                        hashCode() == obj.hashCode() &&
                         Objects.equals(literal, ((Literal) obj).literal);
             }
 
+            @Override
+            int computeHash() {
+                return Objects.hash(literal);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expr.Literal{" +
@@ -416,10 +514,16 @@ public abstract class Ast {
 
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Group &&
+                return this == obj || obj instanceof Group &&
+                        hashCode() == obj.hashCode() &&
                         expression.equals(((Group) obj).expression);
             }
 
+            @Override
+            int computeHash() {
+                return Objects.hash(expression);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expr.Group{" +
@@ -455,10 +559,32 @@ public abstract class Ast {
 
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Binary &&
-                        operator.equals(((Binary) obj).operator) &&
-                        left.equals(((Binary) obj).left) &&
-                        right.equals(((Binary) obj).right);
+                // compares the left operands last so long chains do not recurse
+                Expr expr = this;
+                while (expr != obj && expr instanceof Binary && obj instanceof Binary) {
+                    Binary binary = (Binary) expr;
+                    if (binary.hashCode() != obj.hashCode() ||
+                            !binary.operator.equals(((Binary) obj).operator) ||
+                            !binary.right.equals(((Binary) obj).right)) {
+                        return false;
+                    }
+                    expr = binary.left;
+                    obj = ((Binary) obj).left;
+                }
+                return expr == obj || !(expr instanceof Binary) && expr.equals(obj);
+            }
+
+            @Override
+            int computeHash() {
+                // hashes the left operands first so long chains do not recurse
+                List<Binary> chain = new ArrayList<>();
+                for (Expr expr = left; expr instanceof Binary && expr.hash == 0; expr = ((Binary) expr).left) {
+                    chain.add((Binary) expr);
+                }
+                for (int i = chain.size() - 1; i >= 0; i--) {
+                    chain.get(i).hashCode();
+                }
+                return Objects.hash(operator, left, right);
             }
 
             @Override
@@ -492,11 +618,17 @@ public abstract class Ast {
 
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Access &&
+                return this == obj || obj instanceof Access &&
+                        hashCode() == obj.hashCode() &&
                         receiver.equals(((Access) obj).receiver) &&
                         name.equals(((Access) obj).name);
             }
 
+            @Override
+            int computeHash() {
+                return Objects.hash(receiver, name);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expr.Access{" +
@@ -516,7 +648,7 @@ public abstract class Ast {
             public Function(Optional<Expr> receiver, String name, List<Expr> arguments) {
                 this.receiver = receiver;
                 this.name = name;
-                this.arguments = arguments;
+                this.arguments = List.copyOf(arguments);
             }
 
             public Optional<Expr> getReceiver() {
@@ -533,12 +665,18 @@ public abstract class Ast {
 
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Function &&
+                return this == obj || obj instanceof Function &&
+                        hashCode() == obj.hashCode() &&
                         receiver.equals(((Function) obj).receiver) &&
                         name.equals(((Function) obj).name) &&
                         arguments.equals(((Function) obj).arguments);
             }
 
+            @Override
+            int computeHash() {
+                return Objects.hash(receiver, name, arguments);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expr.Function{" +
@@ -0,0 +1,180 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A hash-consing factory which keeps a single shared instance of each
+ * structurally distinct expression. Interned expressions only refer to
+ * interned children, so two of them are equal exactly when they are the same
+ * instance, and comparing or hashing them only looks at the top node.
+ *
+ * Interning is optional and pays off on repetitive sources such as generated
+ * code. A shared expression has a single set of annotations, so a source
+ * should only be interned before analysis if every occurrence of each name
+ * resolves to the same variable and function (literals always do).
+ */
+public final class AstInterner {
+
+    private final Map<Ast.Expr, Ast.Expr> expressions = new HashMap<>();
+
+    public int size() {
+        return expressions.size();
+    }
+
+    public Ast.Expr.Literal literal(Object literal) {
+        return intern(new Ast.Expr.Literal(literal));
+    }
+
+    public Ast.Expr.Group group(Ast.Expr expression) {
+        return intern(new Ast.Expr.Group(expression));
+    }
+
+    public Ast.Expr.Binary binary(String operator, Ast.Expr left, Ast.Expr right) {
+        return intern(new Ast.Expr.Binary(operator, left, right));
+    }
+
+    public Ast.Expr.Access access(Optional<Ast.Expr> receiver, String name) {
+        return intern(new Ast.Expr.Access(receiver, name));
+    }
+
+    public Ast.Expr.Function function(Optional<Ast.Expr> receiver, String name, List<Ast.Expr> arguments) {
+        return intern(new Ast.Expr.Function(receiver, name, arguments));
+    }
+
+    /**
+     * Returns the shared instance of the given expression, interning its
+     * children first and recreating it if any of them were replaced.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Ast.Expr> T intern(T ast) {
+        Ast.Expr result;
+        if (ast instanceof Ast.Expr.Group) {
+            Ast.Expr expression = intern(((Ast.Expr.Group) ast).getExpression());
+            result = expression == ((Ast.Expr.Group) ast).getExpression() ? ast : new Ast.Expr.Group(expression);
+        } else if (ast instanceof Ast.Expr.Binary) {
+            result = internBinary((Ast.Expr.Binary) ast);
+        } else if (ast instanceof Ast.Expr.Access) {
+            Ast.Expr.Access access = (Ast.Expr.Access) ast;
+            Optional<Ast.Expr> receiver = intern(access.getReceiver());
+            result = receiver == access.getReceiver() ? ast : new Ast.Expr.Access(receiver, access.getName());
+        } else if (ast instanceof Ast.Expr.Function) {
+            Ast.Expr.Function function = (Ast.Expr.Function) ast;
+            Optional<Ast.Expr> receiver = intern(function.getReceiver());
+            List<Ast.Expr> arguments = intern(function.getArguments());
+            result = receiver == function.getReceiver() && arguments == function.getArguments() ? ast
+                    : new Ast.Expr.Function(receiver, function.getName(), arguments);
+        } else {
+            result = ast;
+        }
+        return (T) lookup(result);
+    }
+
+    /**
+     * Returns the shared instance equal to an expression whose children have
+     * already been interned, adding it if there is none.
+     */
+    private Ast.Expr lookup(Ast.Expr ast) {
+        Ast.Expr existing = expressions.putIfAbsent(ast, ast);
+        return existing != null ? existing : ast;
+    }
+
+    /**
+     * Interns the expressions of a source, returning a source with new
+     * fields, methods and statements which refer to the shared instances.
+     */
+    public Ast.Source intern(Ast.Source source) {
+        List<Ast.Field> fields = new ArrayList<>();
+        for (Ast.Field field : source.getFields()) {
+            fields.add(new Ast.Field(field.getName(), field.getTypeName(), intern(field.getValue())));
+        }
+        List<Ast.Method> methods = new ArrayList<>();
+        for (Ast.Method method : source.getMethods()) {
+            methods.add(new Ast.Method(method.getName(), method.getParameters(), method.getParameterTypeNames(),
+                    method.getReturnTypeName(), internStatements(method.getStatements())));
+        }
+        return new Ast.Source(fields, methods);
+    }
+
+    private Ast.Stmt intern(Ast.Stmt ast) {
+        if (ast instanceof Ast.Stmt.Expression) {
+            return new Ast.Stmt.Expression(intern(((Ast.Stmt.Expression) ast).getExpression()));
+        } else if (ast instanceof Ast.Stmt.Declaration) {
+            Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) ast;
+            return new Ast.Stmt.Declaration(declaration.getName(), declaration.getTypeName(), intern(declaration.getValue()));
+        } else if (ast instanceof Ast.Stmt.Assignment) {
+            Ast.Stmt.Assignment assignment = (Ast.Stmt.Assignment) ast;
+            return new Ast.Stmt.Assignment(intern(assignment.getReceiver()), intern(assignment.getValue()));
+        } else if (ast instanceof Ast.Stmt.If) {
+            Ast.Stmt.If stmt = (Ast.Stmt.If) ast;
+            return new Ast.Stmt.If(intern(stmt.getCondition()), internStatements(stmt.getThenStatements()), internStatements(stmt.getElseStatements()));
+        } else if (ast instanceof Ast.Stmt.For) {
+            Ast.Stmt.For stmt = (Ast.Stmt.For) ast;
+            return new Ast.Stmt.For(stmt.getName(), intern(stmt.getValue()), internStatements(stmt.getStatements()));
+        } else if (ast instanceof Ast.Stmt.While) {
+            Ast.Stmt.While stmt = (Ast.Stmt.While) ast;
+            return new Ast.Stmt.While(intern(stmt.getCondition()), internStatements(stmt.getStatements()));
+        } else if (ast instanceof Ast.Stmt.Return) {
+            return new Ast.Stmt.Return(intern(((Ast.Stmt.Return) ast).getValue()));
+        } else {
+            throw new AssertionError(ast.getClass());
+        }
+    }
+
+    /**
+     * Interns a binary expression by walking down its left operands first,
+     * so long chains like {@code a + b + c + ...} do not recurse.
+     */
+    private Ast.Expr internBinary(Ast.Expr.Binary ast) {
+        List<Ast.Expr.Binary> chain = new ArrayList<>();
+        Ast.Expr left = ast;
+        while (left instanceof Ast.Expr.Binary) {
+            chain.add((Ast.Expr.Binary) left);
+            left = ((Ast.Expr.Binary) left).getLeft();
+        }
+        Ast.Expr result = intern(left);
+        for (int i = chain.size() - 1; i > 0; i--) {
+            result = lookup(rebuild(chain.get(i), result));
+        }
+        return rebuild(ast, result);
+    }
+
+    private Ast.Expr.Binary rebuild(Ast.Expr.Binary binary, Ast.Expr left) {
+        Ast.Expr right = intern(binary.getRight());
+        if (left == binary.getLeft() && right == binary.getRight()) {
+            return binary;
+        }
+        return new Ast.Expr.Binary(binary.getOperator(), left, right);
+    }
+
+    private Optional<Ast.Expr> intern(Optional<Ast.Expr> ast) {
+        if (!ast.isPresent()) {
+            return ast;
+        }
+        Ast.Expr expression = intern(ast.get());
+        return expression == ast.get() ? ast : Optional.of(expression);
+    }
+
+    private List<Ast.Expr> intern(List<Ast.Expr> expressions) {
+        List<Ast.Expr> interned = new ArrayList<>(expressions.size());
+        boolean changed = false;
+        for (Ast.Expr expression : expressions) {
+            Ast.Expr result = intern(expression);
+            interned.add(result);
+            changed |= result != expression;
+        }
+        return changed ? interned : expressions;
+    }
+
+    private List<Ast.Stmt> internStatements(List<Ast.Stmt> statements) {
+        List<Ast.Stmt> interned = new ArrayList<>(statements.size());
+        for (Ast.Stmt statement : statements) {
+            interned.add(intern(statement));
+        }
+        return interned;
+    }
+
+}
@@ -0,0 +1,640 @@
+package plc.project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Reads and writes an analyzed {@link Ast.Source} in a compact binary format,
+ * so a script can be loaded without lexing, parsing and analyzing it again.
+ *
+ * The file starts with a fixed header (the magic number, the format version
+ * and the offset of each section as big endian ints) followed by three
+ * sections. The string table holds every name and string literal once. The
+ * symbol table holds every distinct {@link Environment.Variable} and
+ * {@link Environment.Function} set by the {@link Analyzer}, with types stored
+ * by name. The node stream holds the tree in pre-order, where each node is a
+ * tag byte followed by its fields as unsigned varints (string table indices,
+ * symbol table indices plus one, counts). Reading only needs a
+ * {@link ByteBuffer}, so a file can be memory mapped with {@link #read(Path)}.
+ *
+ * Loaded variables and functions have the same names, JVM names and types as
+ * the analyzed ones, and are shared between nodes in the same way. Their
+ * values and implementations are placeholders, as they are after analysis.
+ * Types are looked up in an {@link Isolate}, by default the one of
+ * {@link Environment}, so every type in the source must be registered there
+ * when it is read.
+ */
+public final class AstSerializer {
+
+    private static final int MAGIC = 0x504C4341;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+
+    private static final int ABSENT = 0;
+    private static final int FIELD = 1;
+    private static final int METHOD = 2;
+    private static final int EXPRESSION = 3;
+    private static final int DECLARATION = 4;
+    private static final int ASSIGNMENT = 5;
+    private static final int IF = 6;
+    private static final int FOR = 7;
+    private static final int WHILE = 8;
+    private static final int RETURN = 9;
+    private static final int NIL = 10;
+    private static final int TRUE = 11;
+    private static final int FALSE = 12;
+    private static final int INTEGER = 13;
+    private static final int DECIMAL = 14;
+    private static final int CHARACTER = 15;
+    private static final int STRING = 16;
+    private static final int GROUP = 17;
+    private static final int BINARY = 18;
+    private static final int ACCESS = 19;
+    private static final int FUNCTION = 20;
+
+    private AstSerializer() {}
+
+    public static byte[] write(Ast.Source source) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            write(source, out);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return out.toByteArray();
+    }
+
+    public static void write(Ast.Source source, OutputStream out) throws IOException {
+        Writer writer = new Writer();
+        writer.writeSource(source);
+        Sink strings = new Sink();
+        strings.writeVarint(writer.strings.size());
+        for (String string : writer.strings.keySet()) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            strings.writeVarint(bytes.length);
+            strings.write(bytes, 0, bytes.length);
+        }
+        Sink header = new Sink();
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeInt(HEADER_SIZE);
+        header.writeInt(HEADER_SIZE + strings.size());
+        header.writeInt(HEADER_SIZE + strings.size() + writer.symbols.size());
+        header.writeTo(out);
+        strings.writeTo(out);
+        writer.symbols.writeTo(out);
+        writer.nodes.writeTo(out);
+    }
+
+    public static Ast.Source read(byte[] bytes) {
+        return read(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Reads a source by memory mapping the given file.
+     */
+    public static Ast.Source read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads a source from the remaining bytes of the buffer, which is not
+     * modified.
+     */
+    public static Ast.Source read(ByteBuffer buffer) {
+        return read(buffer, Environment.getIsolate());
+    }
+
+    /**
+     * Reads a source as above, looking its types up in the given isolate.
+     */
+    public static Ast.Source read(ByteBuffer buffer, Isolate isolate) {
+        Reader reader = new Reader(buffer.slice(), isolate);
+        if (reader.buffer.remaining() < HEADER_SIZE || reader.buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a serialized source.");
+        }
+        int version = reader.buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported format version " + version + ".");
+        }
+        reader.position = reader.buffer.getInt(8);
+        reader.readStringTable();
+        reader.position = reader.buffer.getInt(12);
+        reader.readSymbolTable();
+        reader.position = reader.buffer.getInt(16);
+        return reader.readSource();
+    }
+
+    private static final class Writer {
+
+        private final Map<String, Integer> strings = new LinkedHashMap<>();
+        private final Map<Environment.Variable, Integer> variables = new IdentityHashMap<>();
+        private final Map<Environment.Function, Integer> functions = new IdentityHashMap<>();
+        private final Sink variableTable = new Sink();
+        private final Sink functionTable = new Sink();
+        private final Sink symbols = new Sink();
+        private final Sink nodes = new Sink();
+
+        private void writeSource(Ast.Source ast) {
+            nodes.writeVarint(ast.getFields().size());
+            for (Ast.Field field : ast.getFields()) {
+                nodes.write(FIELD);
+                nodes.writeVarint(string(field.getName()));
+                nodes.writeVarint(string(field.getTypeName()));
+                writeOptional(field.getValue());
+                nodes.writeVarint(variable(field.getVariable()));
+            }
+            nodes.writeVarint(ast.getMethods().size());
+            for (Ast.Method method : ast.getMethods()) {
+                nodes.write(METHOD);
+                nodes.writeVarint(string(method.getName()));
+                writeStrings(method.getParameters());
+                writeStrings(method.getParameterTypeNames());
+                nodes.writeVarint(method.getReturnTypeName().map(name -> string(name) + 1).orElse(0));
+                nodes.writeVarint(function(method.getFunction()));
+                writeStatements(method.getStatements());
+            }
+            symbols.writeVarint(variables.size());
+            variableTable.copyTo(symbols);
+            symbols.writeVarint(functions.size());
+            functionTable.copyTo(symbols);
+        }
+
+        private void writeStatement(Ast.Stmt ast) {
+            if (ast instanceof Ast.Stmt.Expression) {
+                nodes.write(EXPRESSION);
+                writeExpression(((Ast.Stmt.Expression) ast).getExpression());
+            } else if (ast instanceof Ast.Stmt.Declaration) {
+                Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) ast;
+                nodes.write(DECLARATION);
+                nodes.writeVarint(string(declaration.getName()));
+                nodes.writeVarint(declaration.getTypeName().map(name -> string(name) + 1).orElse(0));
+                writeOptional(declaration.getValue());
+                nodes.writeVarint(variable(declaration.getVariable()));
+            } else if (ast instanceof Ast.Stmt.Assignment) {
+                nodes.write(ASSIGNMENT);
+                writeExpression(((Ast.Stmt.Assignment) ast).getReceiver());
+                writeExpression(((Ast.Stmt.Assignment) ast).getValue());
+            } else if (ast instanceof Ast.Stmt.If) {
+                nodes.write(IF);
+                writeExpression(((Ast.Stmt.If) ast).getCondition());
+                writeStatements(((Ast.Stmt.If) ast).getThenStatements());
+                writeStatements(((Ast.Stmt.If) ast).getElseStatements());
+            } else if (ast instanceof Ast.Stmt.For) {
+                nodes.write(FOR);
+                nodes.writeVarint(string(((Ast.Stmt.For) ast).getName()));
+                writeExpression(((Ast.Stmt.For) ast).getValue());
+                writeStatements(((Ast.Stmt.For) ast).getStatements());
+            } else if (ast instanceof Ast.Stmt.While) {
+                nodes.write(WHILE);
+                writeExpression(((Ast.Stmt.While) ast).getCondition());
+                writeStatements(((Ast.Stmt.While) ast).getStatements());
+            } else if (ast instanceof Ast.Stmt.Return) {
+                nodes.write(RETURN);
+                writeExpression(((Ast.Stmt.Return) ast).getValue());
+            } else {
+                throw new AssertionError(ast.getClass());
+            }
+        }
+
+        /**
+         * Writes an expression followed by its type. A binary expression is
+         * written as the length of the chain of left operands below it, the
+         * innermost left operand, and then the operator, right operand and
+         * type of each binary expression from the innermost outwards, so
+         * long chains like {@code a + b + c + ...} do not recurse.
+         */
+        private void writeExpression(Ast.Expr ast) {
+            if (ast instanceof Ast.Expr.Binary) {
+                List<Ast.Expr.Binary> chain = new ArrayList<>();
+                Ast.Expr left = ast;
+                while (left instanceof Ast.Expr.Binary) {
+                    chain.add((Ast.Expr.Binary) left);
+                    left = ((Ast.Expr.Binary) left).getLeft();
+                }
+                nodes.write(BINARY);
+                nodes.writeVarint(chain.size());
+                writeExpression(left);
+                for (int i = chain.size() - 1; i >= 0; i--) {
+                    nodes.writeVarint(string(chain.get(i).getOperator()));
+                    writeExpression(chain.get(i).getRight());
+                    writeType(chain.get(i).getType());
+                }
+                return;
+            }
+            if (ast instanceof Ast.Expr.Literal) {
+                writeLiteral(((Ast.Expr.Literal) ast).getLiteral());
+            } else if (ast instanceof Ast.Expr.Group) {
+                nodes.write(GROUP);
+                writeExpression(((Ast.Expr.Group) ast).getExpression());
+            } else if (ast instanceof Ast.Expr.Access) {
+                Ast.Expr.Access access = (Ast.Expr.Access) ast;
+                nodes.write(ACCESS);
+                writeOptional(access.getReceiver());
+                nodes.writeVarint(string(access.getName()));
+                nodes.writeVarint(variable(access.getVariable()));
+            } else if (ast instanceof Ast.Expr.Function) {
+                Ast.Expr.Function function = (Ast.Expr.Function) ast;
+                nodes.write(FUNCTION);
+                writeOptional(function.getReceiver());
+                nodes.writeVarint(string(function.getName()));
+                nodes.writeVarint(function.getArguments().size());
+                for (Ast.Expr argument : function.getArguments()) {
+                    writeExpression(argument);
+                }
+                nodes.writeVarint(function(function.getFunction()));
+            } else {
+                throw new AssertionError(ast.getClass());
+            }
+            writeType(ast.getType());
+        }
+
+        private void writeLiteral(Object literal) {
+            if (literal == null) {
+                nodes.write(NIL);
+            } else if (literal instanceof Boolean) {
+                nodes.write((Boolean) literal ? TRUE : FALSE);
+            } else if (literal instanceof BigInteger) {
+                nodes.write(INTEGER);
+                byte[] bytes = ((BigInteger) literal).toByteArray();
+                nodes.writeVarint(bytes.length);
+                nodes.write(bytes, 0, bytes.length);
+            } else if (literal instanceof BigDecimal) {
+                nodes.write(DECIMAL);
+                nodes.writeVarint((((BigDecimal) literal).scale() << 1) ^ (((BigDecimal) literal).scale() >> 31));
+                byte[] bytes = ((BigDecimal) literal).unscaledValue().toByteArray();
+                nodes.writeVarint(bytes.length);
+                nodes.write(bytes, 0, bytes.length);
+            } else if (literal instanceof Character) {
+                nodes.write(CHARACTER);
+                nodes.writeVarint((Character) literal);
+            } else if (literal instanceof String) {
+                nodes.write(STRING);
+                nodes.writeVarint(string((String) literal));
+            } else {
+                throw new IllegalArgumentException("Unsupported literal " + literal + ".");
+            }
+        }
+
+        private void writeOptional(Optional<Ast.Expr> ast) {
+            if (ast.isPresent()) {
+                writeExpression(ast.get());
+            } else {
+                nodes.write(ABSENT);
+            }
+        }
+
+        private void writeStatements(List<Ast.Stmt> statements) {
+            nodes.writeVarint(statements.size());
+            for (Ast.Stmt statement : statements) {
+                writeStatement(statement);
+            }
+        }
+
+        private void writeStrings(List<String> strings) {
+            nodes.writeVarint(strings.size());
+            for (String string : strings) {
+                nodes.writeVarint(string(string));
+            }
+        }
+
+        private void writeType(Environment.Type type) {
+            nodes.writeVarint(type == null ? 0 : string(type.getName()) + 1);
+        }
+
+        private int string(String string) {
+            Integer id = strings.get(string);
+            if (id == null) {
+                id = strings.size();
+                strings.put(string, id);
+            }
+            return id;
+        }
+
+        private int variable(Environment.Variable variable) {
+            if (variable == null) {
+                return 0;
+            }
+            Integer id = variables.get(variable);
+            if (id == null) {
+                id = variables.size();
+                variables.put(variable, id);
+                variableTable.writeVarint(string(variable.getName()));
+                variableTable.writeVarint(string(variable.getJvmName()));
+                variableTable.writeVarint(string(variable.getType().getName()));
+            }
+            return id + 1;
+        }
+
+        private int function(Environment.Function function) {
+            if (function == null) {
+                return 0;
+            }
+            Integer id = functions.get(function);
+            if (id == null) {
+                id = functions.size();
+                functions.put(function, id);
+                functionTable.writeVarint(string(function.getName()));
+                functionTable.writeVarint(string(function.getJvmName()));
+                functionTable.writeVarint(string(function.getReturnType().getName()));
+                functionTable.writeVarint(function.getParameterTypes().size());
+                for (Environment.Type type : function.getParameterTypes()) {
+                    functionTable.writeVarint(string(type.getName()));
+                }
+            }
+            return id + 1;
+        }
+
+    }
+
+    private static final class Reader {
+
+        private final ByteBuffer buffer;
+        private int position = 0;
+        private String[] strings;
+        private Environment.Variable[] variables;
+        private Environment.Function[] functions;
+        private final Map<String, Environment.Type> types = new HashMap<>();
+        private final Isolate isolate;
+
+        private Reader(ByteBuffer buffer, Isolate isolate) {
+            this.buffer = buffer;
+            this.isolate = isolate;
+        }
+
+        private void readStringTable() {
+            strings = new String[readVarint()];
+            byte[] bytes = new byte[64];
+            for (int i = 0; i < strings.length; i++) {
+                int length = readVarint();
+                if (bytes.length < length) {
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                }
+                buffer.get(position, bytes, 0, length);
+                position += length;
+                strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+        }
+
+        private void readSymbolTable() {
+            variables = new Environment.Variable[readVarint()];
+            for (int i = 0; i < variables.length; i++) {
+                String name = readString();
+                String jvmName = readString();
+                variables[i] = new Environment.Variable(name, jvmName, readTypeName(), Environment.NIL);
+            }
+            functions = new Environment.Function[readVarint()];
+            for (int i = 0; i < functions.length; i++) {
+                String name = readString();
+                String jvmName = readString();
+                Environment.Type returnType = readTypeName();
+                List<Environment.Type> parameterTypes = new ArrayList<>();
+                for (int j = readVarint(); j > 0; j--) {
+                    parameterTypes.add(readTypeName());
+                }
+                functions[i] = new Environment.Function(name, jvmName, parameterTypes, returnType, args -> Environment.NIL);
+            }
+        }
+
+        private Ast.Source readSource() {
+            List<Ast.Field> fields = new ArrayList<>();
+            for (int i = readVarint(); i > 0; i--) {
+                expect(FIELD);
+                Ast.Field field = new Ast.Field(readString(), readString(), readOptional());
+                field.setVariable(readVariable());
+                fields.add(field);
+            }
+            List<Ast.Method> methods = new ArrayList<>();
+            for (int i = readVarint(); i > 0; i--) {
+                expect(METHOD);
+                String name = readString();
+                List<String> parameters = readStrings();
+                List<String> parameterTypeNames = readStrings();
+                int returnTypeName = readVarint();
+                Environment.Function function = readFunction();
+                Ast.Method method = new Ast.Method(name, parameters, parameterTypeNames,
+                        returnTypeName == 0 ? Optional.empty() : Optional.of(strings[returnTypeName - 1]), readStatements());
+                method.setFunction(function);
+                methods.add(method);
+            }
+            return new Ast.Source(fields, methods);
+        }
+
+        private Ast.Stmt readStatement() {
+            int tag = buffer.get(position++);
+            switch (tag) {
+                case EXPRESSION:
+                    return new Ast.Stmt.Expression(readExpression());
+                case DECLARATION: {
+                    String name = readString();
+                    int typeName = readVarint();
+                    Ast.Stmt.Declaration declaration = new Ast.Stmt.Declaration(name,
+                            typeName == 0 ? Optional.empty() : Optional.of(strings[typeName - 1]), readOptional());
+                    declaration.setVariable(readVariable());
+                    return declaration;
+                }
+                case ASSIGNMENT:
+                    return new Ast.Stmt.Assignment(readExpression(), readExpression());
+                case IF:
+                    return new Ast.Stmt.If(readExpression(), readStatements(), readStatements());
+                case FOR:
+                    return new Ast.Stmt.For(readString(), readExpression(), readStatements());
+                case WHILE:
+                    return new Ast.Stmt.While(readExpression(), readStatements());
+                case RETURN:
+                    return new Ast.Stmt.Return(readExpression());
+                default:
+                    throw new IllegalArgumentException("Invalid statement tag " + tag + " at " + (position - 1) + ".");
+            }
+        }
+
+        private Ast.Expr readExpression() {
+            int tag = buffer.get(position++);
+            Ast.Expr ast;
+            switch (tag) {
+                case NIL:
+                    ast = new Ast.Expr.Literal(null);
+                    break;
+                case TRUE:
+                    ast = new Ast.Expr.Literal(true);
+                    break;
+                case FALSE:
+                    ast = new Ast.Expr.Literal(false);
+                    break;
+                case INTEGER:
+                    ast = new Ast.Expr.Literal(new BigInteger(readBytes()));
+                    break;
+                case DECIMAL: {
+                    int scale = readVarint();
+                    ast = new Ast.Expr.Literal(new BigDecimal(new BigInteger(readBytes()), (scale >>> 1) ^ -(scale & 1)));
+                    break;
+                }
+                case CHARACTER:
+                    ast = new Ast.Expr.Literal((char) readVarint());
+                    break;
+                case STRING:
+                    ast = new Ast.Expr.Literal(readString());
+                    break;
+                case GROUP:
+                    ast = new Ast.Expr.Group(readExpression());
+                    break;
+                case BINARY: {
+                    int count = readVarint();
+                    ast = readExpression();
+                    for (int i = 0; i < count; i++) {
+                        String operator = readString();
+                        ast = new Ast.Expr.Binary(operator, ast, readExpression());
+                        ast.setType(readType());
+                    }
+                    return ast;
+                }
+                case ACCESS: {
+                    Optional<Ast.Expr> receiver = readOptional();
+                    Ast.Expr.Access access = new Ast.Expr.Access(receiver, readString());
+                    access.setVariable(readVariable());
+                    ast = access;
+                    break;
+                }
+                case FUNCTION: {
+                    Optional<Ast.Expr> receiver = readOptional();
+                    String name = readString();
+                    List<Ast.Expr> arguments = new ArrayList<>();
+                    for (int i = readVarint(); i > 0; i--) {
+                        arguments.add(readExpression());
+                    }
+                    Ast.Expr.Function function = new Ast.Expr.Function(receiver, name, arguments);
+                    function.setFunction(readFunction());
+                    ast = function;
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Invalid expression tag " + tag + " at " + (position - 1) + ".");
+            }
+            ast.setType(readType());
+            return ast;
+        }
+
+        private Optional<Ast.Expr> readOptional() {
+            if (buffer.get(position) == ABSENT) {
+                position++;
+                return Optional.empty();
+            }
+            return Optional.of(readExpression());
+        }
+
+
+        private List<Ast.Stmt> readStatements() {
+            int count = readVarint();
+            List<Ast.Stmt> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                statements.add(readStatement());
+            }
+            return statements;
+        }
+
+        private List<String> readStrings() {
+            int count = readVarint();
+            List<String> strings = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                strings.add(readString());
+            }
+            return strings;
+        }
+
+        private byte[] readBytes() {
+            byte[] bytes = new byte[readVarint()];
+            buffer.get(position, bytes);
+            position += bytes.length;
+            return bytes;
+        }
+
+        private String readString() {
+            return strings[readVarint()];
+        }
+
+        private Environment.Type readType() {
+            int id = readVarint();
+            if (id == 0) {
+                return null;
+            }
+            return types.computeIfAbsent(strings[id - 1], isolate::getType);
+        }
+
+        private Environment.Type readTypeName() {
+            return types.computeIfAbsent(readString(), isolate::getType);
+        }
+
+        private Environment.Variable readVariable() {
+            int id = readVarint();
+            return id == 0 ? null : variables[id - 1];
+        }
+
+        private Environment.Function readFunction() {
+            int id = readVarint();
+            return id == 0 ? null : functions[id - 1];
+        }
+
+        private void expect(int tag) {
+            if (buffer.get(position) != tag) {
+                throw new IllegalArgumentException("Expected tag " + tag + " at " + position + ".");
+            }
+            position++;
+        }
+
+        private int readVarint() {
+            int result = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer.get(position++);
+                result |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * A byte array output stream with varint and fixed width writes.
+     */
+    private static final class Sink extends ByteArrayOutputStream {
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        private void writeInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        private void copyTo(Sink sink) {
+            sink.write(buf, 0, count);
+        }
+
+    }
+
+}
@@ -0,0 +1,184 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Computes the content hashes returned by {@link Ast#getContentHash()}.
+ *
+ * A node's hash combines a tag for its class with its names, literals and the
+ * cached hashes of its children, so it only depends on the content of the
+ * subtree and is only computed once per node. Strings and literals are hashed
+ * by their characters and bytes rather than with {@link Object#hashCode()},
+ * so the hash is the same in every process and JVM.
+ */
+final class ContentHash {
+
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private static final int SOURCE = 1;
+    private static final int FIELD = 2;
+    private static final int METHOD = 3;
+    private static final int EXPRESSION = 4;
+    private static final int DECLARATION = 5;
+    private static final int ASSIGNMENT = 6;
+    private static final int IF = 7;
+    private static final int FOR = 8;
+    private static final int WHILE = 9;
+    private static final int RETURN = 10;
+    private static final int LITERAL = 11;
+    private static final int GROUP = 12;
+    private static final int BINARY = 13;
+    private static final int ACCESS = 14;
+    private static final int FUNCTION = 15;
+
+    private ContentHash() {}
+
+    static long compute(Ast ast) {
+        long hash;
+        if (ast instanceof Ast.Source) {
+            Ast.Source source = (Ast.Source) ast;
+            hash = combine(combine(SOURCE, source.getFields()), source.getMethods());
+        } else if (ast instanceof Ast.Field) {
+            Ast.Field field = (Ast.Field) ast;
+            hash = combine(combine(combine(FIELD, field.getName()), field.getTypeName()), field.getValue());
+        } else if (ast instanceof Ast.Method) {
+            Ast.Method method = (Ast.Method) ast;
+            hash = combine(METHOD, method.getName());
+            hash = combineStrings(hash, method.getParameters());
+            hash = combineStrings(hash, method.getParameterTypeNames());
+            hash = method.getReturnTypeName().isPresent() ? combine(combine(hash, 1), method.getReturnTypeName().get()) : combine(hash, 0);
+            hash = combine(hash, method.getStatements());
+        } else if (ast instanceof Ast.Stmt.Expression) {
+            hash = combine(EXPRESSION, ((Ast.Stmt.Expression) ast).getExpression().getContentHash());
+        } else if (ast instanceof Ast.Stmt.Declaration) {
+            Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) ast;
+            hash = combine(DECLARATION, declaration.getName());
+            hash = declaration.getTypeName().isPresent() ? combine(combine(hash, 1), declaration.getTypeName().get()) : combine(hash, 0);
+            hash = combine(hash, declaration.getValue());
+        } else if (ast instanceof Ast.Stmt.Assignment) {
+            Ast.Stmt.Assignment assignment = (Ast.Stmt.Assignment) ast;
+            hash = combine(combine(ASSIGNMENT, assignment.getReceiver().getContentHash()), assignment.getValue().getContentHash());
+        } else if (ast instanceof Ast.Stmt.If) {
+            Ast.Stmt.If stmt = (Ast.Stmt.If) ast;
+            hash = combine(combine(combine(IF, stmt.getCondition().getContentHash()), stmt.getThenStatements()), stmt.getElseStatements());
+        } else if (ast instanceof Ast.Stmt.For) {
+            Ast.Stmt.For stmt = (Ast.Stmt.For) ast;
+            hash = combine(combine(combine(FOR, stmt.getName()), stmt.getValue().getContentHash()), stmt.getStatements());
+        } else if (ast instanceof Ast.Stmt.While) {
+            Ast.Stmt.While stmt = (Ast.Stmt.While) ast;
+            hash = combine(combine(WHILE, stmt.getCondition().getContentHash()), stmt.getStatements());
+        } else if (ast instanceof Ast.Stmt.Return) {
+            hash = combine(RETURN, ((Ast.Stmt.Return) ast).getValue().getContentHash());
+        } else if (ast instanceof Ast.Expr.Literal) {
+            hash = combineLiteral(LITERAL, ((Ast.Expr.Literal) ast).getLiteral());
+        } else if (ast instanceof Ast.Expr.Group) {
+            hash = combine(GROUP, ((Ast.Expr.Group) ast).getExpression().getContentHash());
+        } else if (ast instanceof Ast.Expr.Binary) {
+            hash = computeBinary((Ast.Expr.Binary) ast);
+        } else if (ast instanceof Ast.Expr.Access) {
+            Ast.Expr.Access access = (Ast.Expr.Access) ast;
+            hash = combine(combine(ACCESS, access.getReceiver()), access.getName());
+        } else if (ast instanceof Ast.Expr.Function) {
+            Ast.Expr.Function function = (Ast.Expr.Function) ast;
+            hash = combine(combine(combine(FUNCTION, function.getReceiver()), function.getName()), function.getArguments());
+        } else {
+            throw new AssertionError(ast.getClass());
+        }
+        hash = finish(hash);
+        return hash != 0 ? hash : 1;
+    }
+
+    /**
+     * Hashes the left operands of a binary expression bottom up first, so
+     * long chains like {@code a + b + c + ...} do not recurse.
+     */
+    private static long computeBinary(Ast.Expr.Binary ast) {
+        List<Ast.Expr.Binary> chain = new ArrayList<>();
+        Ast.Expr left = ast.getLeft();
+        while (left instanceof Ast.Expr.Binary) {
+            chain.add((Ast.Expr.Binary) left);
+            left = ((Ast.Expr.Binary) left).getLeft();
+        }
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            chain.get(i).getContentHash();
+        }
+        long hash = combine(BINARY, ast.getOperator());
+        return combine(combine(hash, ast.getLeft().getContentHash()), ast.getRight().getContentHash());
+    }
+
+    private static long combineLiteral(long hash, Object literal) {
+        if (literal == null) {
+            return combine(hash, 0);
+        } else if (literal instanceof Boolean) {
+            return combine(hash, (Boolean) literal ? 1 : 2);
+        } else if (literal instanceof BigInteger) {
+            return combine(combine(hash, 3), ((BigInteger) literal).toByteArray());
+        } else if (literal instanceof BigDecimal) {
+            hash = combine(combine(hash, 4), ((BigDecimal) literal).scale());
+            return combine(hash, ((BigDecimal) literal).unscaledValue().toByteArray());
+        } else if (literal instanceof Character) {
+            return combine(combine(hash, 5), (Character) literal);
+        } else if (literal instanceof String) {
+            return combine(combine(hash, 6), (String) literal);
+        } else {
+            throw new IllegalArgumentException("Unsupported literal " + literal + ".");
+        }
+    }
+
+    private static long combine(long hash, List<? extends Ast> asts) {
+        hash = combine(hash, asts.size());
+        for (Ast ast : asts) {
+            hash = combine(hash, ast.getContentHash());
+        }
+        return hash;
+    }
+
+    private static long combine(long hash, Optional<? extends Ast> ast) {
+        return ast.isPresent() ? combine(combine(hash, 1), ast.get().getContentHash()) : combine(hash, 0);
+    }
+
+    private static long combineStrings(long hash, List<String> strings) {
+        hash = combine(hash, strings.size());
+        for (String string : strings) {
+            hash = combine(hash, string);
+        }
+        return hash;
+    }
+
+    /**
+     * Combines a string using 64 bit FNV-1a over its characters.
+     */
+    private static long combine(long hash, String string) {
+        long value = 0xCBF29CE484222325L;
+        for (int i = 0; i < string.length(); i++) {
+            value = (value ^ string.charAt(i)) * 0x100000001B3L;
+        }
+        return combine(combine(hash, string.length()), value);
+    }
+
+    private static long combine(long hash, byte[] bytes) {
+        long value = 0xCBF29CE484222325L;
+        for (byte b : bytes) {
+            value = (value ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return combine(combine(hash, bytes.length), value);
+    }
+
+    private static long combine(long hash, long value) {
+        return Long.rotateLeft(hash ^ value * MULTIPLIER, 27) * MULTIPLIER;
+    }
+
+    /**
+     * Mixes the bits of a hash with the finalizer of SplitMix64.
+     */
+    private static long finish(long hash) {
+        hash = (hash ^ hash >>> 30) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ hash >>> 27) * 0x94D049BB133111EBL;
+        return hash ^ hash >>> 31;
+    }
+
+}
@@ -1,14 +1,34 @@
 package plc.project;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public final class Environment {
 
-    public static final PlcObject NIL = new PlcObject(Type.NIL, new Scope(null), new Object() {
+    /**
+     * The scope of every object without fields, which is never modified since
+     * looking a name up in it always fails.
+     */
+    private static final Scope EMPTY = new Scope(null);
+
+    /**
+     * The types of created values, named like the built-in types. Like the
+     * scope they have no fields or methods, so a value's methods are only
+     * those the Interpreter provides rather than the placeholders the
+     * Analyzer sees on the built-in types. Values of any other class are of
+     * the unknown type.
+     */
+    private static final Type INTEGER_VALUE = new Type("Integer", "int", EMPTY);
+    private static final Type BOOLEAN_VALUE = new Type("Boolean", "boolean", EMPTY);
+    private static final Type DECIMAL_VALUE = new Type("Decimal", "double", EMPTY);
+    private static final Type CHARACTER_VALUE = new Type("Character", "char", EMPTY);
+    private static final Type STRING_VALUE = new Type("String", "String", EMPTY);
+    private static final Type UNKNOWN = new Type("Unknown", "Unknown", EMPTY);
+
+    public static final PlcObject NIL = new PlcObject(Type.NIL, EMPTY, new Object() {
 
         @Override
         public String toString() {
@@ -17,24 +37,56 @@ public final class Environment {
 
     });
 
-    private static final Map<String, Type> TYPES = new HashMap<>();
+    public static final PlcObject TRUE = new PlcObject(BOOLEAN_VALUE, EMPTY, true);
+    public static final PlcObject FALSE = new PlcObject(BOOLEAN_VALUE, EMPTY, false);
+
+    private static final int SMALL_INTEGER_MIN = -128;
+    private static final int SMALL_INTEGER_MAX = 1024;
+    private static final PlcObject[] SMALL_INTEGERS = new PlcObject[SMALL_INTEGER_MAX - SMALL_INTEGER_MIN + 1];
+
+    /**
+     * The isolate shared by the whole process, used by the static type
+     * registry methods below.
+     */
+    private static final Isolate ISOLATE = new Isolate();
+
+    public static Isolate getIsolate() {
+        return ISOLATE;
+    }
 
     public static Type getType(String name) {
-        if (!TYPES.containsKey(name)) {
-            throw new RuntimeException("Unknown type " + name + ".");
-        }
-        return TYPES.get(name);
+        return ISOLATE.getType(name);
     }
 
     public static void registerType(Type type) {
-        if (TYPES.containsKey(type.getName())) {
-            throw new IllegalArgumentException("Duplicate registration of type " + type.getName() + ".");
-        }
-        TYPES.put(type.getName(), type);
+        ISOLATE.registerType(type);
     }
 
+    /**
+     * Creates an object without fields or methods for the value, with the
+     * type of its kind of value. Objects are immutable, so booleans and small
+     * integers are shared instead of allocated again.
+     */
     public static PlcObject create(Object value) {
-        return new PlcObject(new Scope(null), value);
+        if (value instanceof Boolean) {
+            return (Boolean) value ? TRUE : FALSE;
+        } else if (value instanceof BigInteger) {
+            BigInteger integer = (BigInteger) value;
+            if (integer.bitLength() < 32) {
+                int i = integer.intValue();
+                if (i >= SMALL_INTEGER_MIN && i <= SMALL_INTEGER_MAX) {
+                    return SMALL_INTEGERS[i - SMALL_INTEGER_MIN];
+                }
+            }
+            return new PlcObject(INTEGER_VALUE, EMPTY, value);
+        } else if (value instanceof String) {
+            return new PlcObject(STRING_VALUE, EMPTY, value);
+        } else if (value instanceof BigDecimal) {
+            return new PlcObject(DECIMAL_VALUE, EMPTY, value);
+        } else if (value instanceof Character) {
+            return new PlcObject(CHARACTER_VALUE, EMPTY, value);
+        }
+        return new PlcObject(UNKNOWN, EMPTY, value);
     }
 
     public static final class Type {
@@ -265,15 +317,9 @@ public final class Environment {
     }
 
     static {
-        registerType(Type.ANY);
-        registerType(Type.NIL);
-        registerType(Type.INTEGER_ITERABLE);
-        registerType(Type.COMPARABLE);
-        registerType(Type.BOOLEAN);
-        registerType(Type.INTEGER);
-        registerType(Type.DECIMAL);
-        registerType(Type.CHARACTER);
-        registerType(Type.STRING);
+        for (int i = 0; i < SMALL_INTEGERS.length; i++) {
+            SMALL_INTEGERS[i] = new PlcObject(INTEGER_VALUE, EMPTY, BigInteger.valueOf(SMALL_INTEGER_MIN + i));
+        }
         Type.ANY.scope.defineFunction("stringify", "toString", Arrays.asList(), Type.STRING, args -> Environment.NIL);
         Type.COMPARABLE.scope.defineFunction("compare", "compareTo", Arrays.asList(Type.ANY, Type.COMPARABLE), Type.COMPARABLE, args -> Environment.NIL);
         Type.INTEGER.scope.defineFunction("compare", "compareTo", Arrays.asList(Type.ANY, Type.INTEGER), Type.INTEGER, args -> Environment.NIL);
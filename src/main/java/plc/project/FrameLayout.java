@@ -0,0 +1,241 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The layout of a method's frame, which resolves each parameter and local
+ * variable of the method to a slot in an array of values, and each field of
+ * the source to a slot in an array of global variables. A coordinate is a
+ * depth, {@link #LOCAL} or {@link #FIELD}, and a slot packed into an int, so
+ * the Interpreter reads a variable with an array index instead of looking its
+ * name up in a chain of scopes.
+ *
+ * Parameters take the first slots, followed by the variables declared in the
+ * method, where a block's slots are reused once the block ends. Names which
+ * are neither are unresolved and are still looked up by name, which includes
+ * variables defined outside the source and by assignment to undefined names.
+ *
+ * Coordinates are keyed by node identity, so they do not depend on the order
+ * nodes were created in (a lazily parsed body is created after its method).
+ * An expression shared by {@link AstInterner} has a single coordinate, so a
+ * method where a shared expression would need two is not resolved at all.
+ *
+ * Each call to a function without a receiver also gets a slot caching the
+ * function it last called, which stays valid until another function is
+ * defined in a scope with the same root scope.
+ */
+final class FrameLayout {
+
+    static final int LOCAL = 0;
+    static final int FIELD = 1;
+
+    private final int size;
+    private final Environment.Function[] targets;
+    private final int[] versions;
+
+    /**
+     * The coordinate of each resolved node, or -1 for variables which are
+     * looked up by name.
+     */
+    private final Map<Ast, Integer> coordinates;
+
+    private FrameLayout(int size, Map<Ast, Integer> coordinates, int calls) {
+        this.size = size;
+        this.coordinates = coordinates;
+        this.targets = new Environment.Function[calls];
+        this.versions = new int[calls];
+    }
+
+    /**
+     * Resolves the variables of a method given the global slots of the
+     * fields, returning null if the method has a repeated parameter name
+     * or a shared expression which resolves to different coordinates.
+     */
+    static FrameLayout of(Ast.Method method, Map<String, Integer> fields) {
+        Resolver resolver = new Resolver(fields);
+        resolver.blocks.push(new HashMap<>());
+        for (String parameter : method.getParameters()) {
+            if (resolver.blocks.peek().containsKey(parameter)) {
+                return null;
+            }
+            resolver.declare(parameter);
+        }
+        resolver.resolve(method.getStatements());
+        if (resolver.conflict) {
+            return null;
+        }
+        return new FrameLayout(resolver.size, resolver.coordinates, resolver.calls);
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the coordinate of a variable access or declaration, or of the
+     * variable of a for loop, or -1 if it is unresolved. A declaration is
+     * only unresolved if its name is already declared in the same block. For
+     * a call without a receiver this is the slot of its cached function.
+     */
+    int getCoordinate(Ast ast) {
+        return coordinates.getOrDefault(ast, -1);
+    }
+
+    /**
+     * Returns the function called by a call without a receiver, only looking
+     * it up from the given scope if no function has been defined under its
+     * root scope since the last lookup. The scope must be the method's scope,
+     * which never defines functions itself, so the result of the lookup
+     * cannot change otherwise.
+     */
+    Environment.Function lookupFunction(Ast.Expr.Function ast, Scope scope) {
+        int site = getCoordinate(ast);
+        int version = scope.getDefinitionCount();
+        if (targets[site] == null || versions[site] != version) {
+            targets[site] = scope.lookupFunction(ast.getName(), ast.getArguments().size());
+            versions[site] = version;
+        }
+        return targets[site];
+    }
+
+    static int depth(int coordinate) {
+        return coordinate & 1;
+    }
+
+    static int slot(int coordinate) {
+        return coordinate >>> 1;
+    }
+
+    private static final class Resolver {
+
+        private final Map<String, Integer> fields;
+        private final Deque<Map<String, Integer>> blocks = new ArrayDeque<>();
+        private final Map<Ast, Integer> coordinates = new IdentityHashMap<>();
+        private int next = 0;
+        private int size = 0;
+        private int calls = 0;
+        private boolean conflict = false;
+
+        private Resolver(Map<String, Integer> fields) {
+            this.fields = fields;
+        }
+
+        private int declare(String name) {
+            int slot = next++;
+            size = Math.max(size, next);
+            blocks.peek().put(name, slot);
+            return slot;
+        }
+
+        private void resolve(List<Ast.Stmt> statements) {
+            for (Ast.Stmt statement : statements) {
+                resolve(statement);
+            }
+        }
+
+        private void resolveBlock(List<Ast.Stmt> statements) {
+            int start = next;
+            blocks.push(new HashMap<>());
+            resolve(statements);
+            blocks.pop();
+            next = start;
+        }
+
+        private void resolve(Ast.Stmt ast) {
+            if (ast instanceof Ast.Stmt.Expression) {
+                resolve(((Ast.Stmt.Expression) ast).getExpression());
+            } else if (ast instanceof Ast.Stmt.Declaration) {
+                Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) ast;
+                declaration.getValue().ifPresent(this::resolve);
+                if (!blocks.peek().containsKey(declaration.getName())) {
+                    set(ast, LOCAL, declare(declaration.getName()));
+                }
+            } else if (ast instanceof Ast.Stmt.Assignment) {
+                resolve(((Ast.Stmt.Assignment) ast).getReceiver());
+                resolve(((Ast.Stmt.Assignment) ast).getValue());
+            } else if (ast instanceof Ast.Stmt.If) {
+                resolve(((Ast.Stmt.If) ast).getCondition());
+                resolveBlock(((Ast.Stmt.If) ast).getThenStatements());
+                resolveBlock(((Ast.Stmt.If) ast).getElseStatements());
+            } else if (ast instanceof Ast.Stmt.For) {
+                Ast.Stmt.For stmt = (Ast.Stmt.For) ast;
+                resolve(stmt.getValue());
+                int start = next;
+                blocks.push(new HashMap<>());
+                set(ast, LOCAL, declare(stmt.getName()));
+                resolve(stmt.getStatements());
+                blocks.pop();
+                next = start;
+            } else if (ast instanceof Ast.Stmt.While) {
+                resolve(((Ast.Stmt.While) ast).getCondition());
+                resolveBlock(((Ast.Stmt.While) ast).getStatements());
+            } else if (ast instanceof Ast.Stmt.Return) {
+                if (((Ast.Stmt.Return) ast).getValue() != null) {
+                    resolve(((Ast.Stmt.Return) ast).getValue());
+                }
+            } else {
+                throw new AssertionError(ast.getClass());
+            }
+        }
+
+        /**
+         * Resolves an expression, walking down the left operands of binary
+         * expressions in a loop so long chains do not recurse.
+         */
+        private void resolve(Ast.Expr ast) {
+            while (ast instanceof Ast.Expr.Binary) {
+                resolve(((Ast.Expr.Binary) ast).getRight());
+                ast = ((Ast.Expr.Binary) ast).getLeft();
+            }
+            if (ast instanceof Ast.Expr.Group) {
+                resolve(((Ast.Expr.Group) ast).getExpression());
+            } else if (ast instanceof Ast.Expr.Access) {
+                Ast.Expr.Access access = (Ast.Expr.Access) ast;
+                if (access.getReceiver().isPresent()) {
+                    resolve(access.getReceiver().get());
+                } else {
+                    resolveVariable(access);
+                }
+            } else if (ast instanceof Ast.Expr.Function) {
+                if (((Ast.Expr.Function) ast).getReceiver().isPresent()) {
+                    resolve(((Ast.Expr.Function) ast).getReceiver().get());
+                } else if (!coordinates.containsKey(ast)) {
+                    set(ast, calls++);
+                }
+                for (Ast.Expr argument : ((Ast.Expr.Function) ast).getArguments()) {
+                    resolve(argument);
+                }
+            }
+        }
+
+        private void resolveVariable(Ast.Expr.Access ast) {
+            for (Map<String, Integer> block : blocks) {
+                Integer slot = block.get(ast.getName());
+                if (slot != null) {
+                    set(ast, LOCAL, slot);
+                    return;
+                }
+            }
+            Integer slot = fields.get(ast.getName());
+            set(ast, slot != null ? slot << 1 | FIELD : -1);
+        }
+
+        private void set(Ast ast, int depth, int slot) {
+            set(ast, slot << 1 | depth);
+        }
+
+        private void set(Ast ast, int coordinate) {
+            Integer previous = coordinates.put(ast, coordinate);
+            if (previous != null && previous != coordinate) {
+                conflict = true;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,115 @@
+package plc.project;
+
+import java.io.Reader;
+
+/**
+ * Editable text stored as a gap buffer, where the unused capacity sits at the
+ * position of the last edit. An edit moves the gap to its offset, so edits
+ * close to each other only copy the characters between them.
+ */
+final class GapText implements CharSequence {
+
+    private static final int MIN_GAP = 256;
+
+    private char[] chars;
+    private int gapStart;
+    private int gapEnd;
+
+    GapText(String text) {
+        chars = new char[text.length() + MIN_GAP];
+        text.getChars(0, text.length(), chars, 0);
+        gapStart = text.length();
+        gapEnd = chars.length;
+    }
+
+    @Override
+    public int length() {
+        return chars.length - (gapEnd - gapStart);
+    }
+
+    @Override
+    public char charAt(int index) {
+        return index < gapStart ? chars[index] : chars[index + gapEnd - gapStart];
+    }
+
+    /**
+     * Copies the characters in {@code [from, to)} into the destination.
+     */
+    void getChars(int from, int to, char[] destination, int offset) {
+        int before = Math.max(0, Math.min(to, gapStart) - from);
+        System.arraycopy(chars, from, destination, offset, before);
+        if (from + before < to) {
+            System.arraycopy(chars, from + before + gapEnd - gapStart, destination, offset + before, to - from - before);
+        }
+    }
+
+    @Override
+    public String subSequence(int start, int end) {
+        char[] result = new char[end - start];
+        getChars(start, end, result, 0);
+        return new String(result);
+    }
+
+    /**
+     * Replaces the text in {@code [offset, offset + removed)} with the
+     * inserted text.
+     */
+    void replace(int offset, int removed, CharSequence inserted) {
+        moveGap(offset);
+        gapEnd += removed;
+        if (gapEnd - gapStart < inserted.length()) {
+            int length = length();
+            char[] grown = new char[Math.max(chars.length * 2, length + inserted.length() + MIN_GAP)];
+            System.arraycopy(chars, 0, grown, 0, gapStart);
+            int after = chars.length - gapEnd;
+            System.arraycopy(chars, gapEnd, grown, grown.length - after, after);
+            chars = grown;
+            gapEnd = grown.length - after;
+        }
+        for (int i = 0; i < inserted.length(); i++) {
+            chars[gapStart++] = inserted.charAt(i);
+        }
+    }
+
+    private void moveGap(int offset) {
+        if (offset < gapStart) {
+            System.arraycopy(chars, offset, chars, gapEnd - (gapStart - offset), gapStart - offset);
+        } else {
+            System.arraycopy(chars, gapEnd, chars, gapStart, offset - gapStart);
+        }
+        gapEnd += offset - gapStart;
+        gapStart = offset;
+    }
+
+    /**
+     * Returns a reader over the text from the given offset, which must not be
+     * used once the text is edited again.
+     */
+    Reader reader(int offset) {
+        return new Reader() {
+
+            private int position = offset;
+
+            @Override
+            public int read(char[] buffer, int off, int len) {
+                if (position == length()) {
+                    return -1;
+                }
+                int count = Math.min(len, length() - position);
+                getChars(position, position + count, buffer, off);
+                position += count;
+                return count;
+            }
+
+            @Override
+            public void close() {}
+
+        };
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length());
+    }
+
+}
@@ -2,6 +2,8 @@
 package plc.project;
 
 import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 public final class Generator implements Ast.Visitor<Void> {
 
@@ -314,10 +316,31 @@ public final class Generator implements Ast.Visitor<Void> {
         return null;
     }
 
+    /**
+     * Prints a chain of left nested binary expressions from the innermost
+     * operand outwards in a loop, so long chains do not recurse once per
+     * operator.
+     */
     @Override
     public Void visit(Ast.Expr.Binary ast) {
-        visit(ast.getLeft()); // Visit the left operand
+        Deque<Ast.Expr.Binary> chain = new ArrayDeque<>();
+        Ast.Expr expr = ast;
+        while (expr instanceof Ast.Expr.Binary) {
+            chain.push((Ast.Expr.Binary) expr);
+            expr = ((Ast.Expr.Binary) expr).getLeft();
+        }
+        visit(expr); // Visit the innermost left operand
+        while (!chain.isEmpty()) {
+            printOperator(chain.pop());
+        }
+        return null;
+    }
 
+    /**
+     * Prints the operator and right operand of a binary expression whose left
+     * operand has already been printed.
+     */
+    private void printOperator(Ast.Expr.Binary ast) {
         // Handle string concatenation separately
         if (ast.getOperator().equals("+") &&
                 (ast.getLeft().getType() == Environment.Type.STRING ||
@@ -341,7 +364,6 @@ public final class Generator implements Ast.Visitor<Void> {
         }
 
         visit(ast.getRight()); // Visit the right operand
-        return null;
     }
 
     @Override
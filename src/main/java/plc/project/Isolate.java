@@ -0,0 +1,76 @@
+package plc.project;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An isolated set of registered types, so embedders can give each tenant its
+ * own type namespace instead of sharing the global one in {@link Environment}.
+ * A new isolate starts with the built-in types.
+ *
+ * The types are held in an immutable {@link PersistentMap} which is replaced
+ * as a whole on registration. Looking a type up is a single volatile read with
+ * no locking, and registration from many threads retries a compare-and-set
+ * instead of taking a lock, so no thread ever blocks another.
+ */
+public final class Isolate {
+
+    private static final PersistentMap<String, Environment.Type> BUILTINS = builtins(
+            Environment.Type.ANY,
+            Environment.Type.NIL,
+            Environment.Type.INTEGER_ITERABLE,
+            Environment.Type.COMPARABLE,
+            Environment.Type.BOOLEAN,
+            Environment.Type.INTEGER,
+            Environment.Type.DECIMAL,
+            Environment.Type.CHARACTER,
+            Environment.Type.STRING
+    );
+
+    private final AtomicReference<PersistentMap<String, Environment.Type>> types;
+
+    public Isolate() {
+        this(BUILTINS);
+    }
+
+    private Isolate(PersistentMap<String, Environment.Type> types) {
+        this.types = new AtomicReference<>(types);
+    }
+
+    /**
+     * Returns a new isolate with the types currently registered in this one,
+     * in constant time. Types registered in either afterwards are not seen by
+     * the other.
+     */
+    public Isolate fork() {
+        return new Isolate(types.get());
+    }
+
+    public Environment.Type getType(String name) {
+        Environment.Type type = types.get().get(name);
+        if (type == null) {
+            throw new RuntimeException("Unknown type " + name + ".");
+        }
+        return type;
+    }
+
+    public void registerType(Environment.Type type) {
+        PersistentMap<String, Environment.Type> current;
+        PersistentMap<String, Environment.Type> updated;
+        do {
+            current = types.get();
+            if (current.get(type.getName()) != null) {
+                throw new IllegalArgumentException("Duplicate registration of type " + type.getName() + ".");
+            }
+            updated = current.put(type.getName(), type);
+        } while (!types.compareAndSet(current, updated));
+    }
+
+    private static PersistentMap<String, Environment.Type> builtins(Environment.Type... builtins) {
+        PersistentMap<String, Environment.Type> types = PersistentMap.empty();
+        for (Environment.Type type : builtins) {
+            types = types.put(type.getName(), type);
+        }
+        return types;
+    }
+
+}
@@ -0,0 +1,903 @@
+package plc.project;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * The lexer works through three main functions:
+ *
+ *  - {@link #lex()}, which repeatedly calls lexToken() and skips whitespace
+ *  - {@link #lexToken()}, which lexes the next token
+ *  - {@link CharStream}, which manages the state of the lexer and literals
+ *
+ * Tokens are recognized by a table-driven state machine. Each ASCII character
+ * is mapped to a character class by a lookup table, and the next state is
+ * looked up from the current state and that class; every non-ASCII character
+ * falls into {@link #OTHER}. The longest accepted prefix is emitted, and if
+ * the machine stops inside a character or string literal a
+ * {@link ParseException} is thrown with the index of the invalid character.
+ *
+ * Input may either be a {@link String}, a {@link Reader}/{@link ReadableByteChannel}
+ * or a buffer of UTF-8 bytes (see {@link #map(Path)}). Readers are consumed in
+ * fixed-size chunks, and {@link #tokens()} yields the tokens on demand, so
+ * lexing a large source does not require holding either the full text or the
+ * full token list in memory.
+ */
+public final class Lexer {
+
+    private static final byte OTHER = 0;
+    private static final byte LETTER = 1;
+    private static final byte ESCAPE_LETTER = 2;
+    private static final byte DIGIT = 3;
+    private static final byte PLUS = 4;
+    private static final byte MINUS = 5;
+    private static final byte DOT = 6;
+    private static final byte SINGLE_QUOTE = 7;
+    private static final byte DOUBLE_QUOTE = 8;
+    private static final byte BACKSLASH = 9;
+    private static final byte COMPARISON = 10;
+    private static final byte EQUALS = 11;
+    private static final byte WHITESPACE = 12;
+    private static final byte NEWLINE = 13;
+    private static final byte EOF = 14;
+    private static final int CLASSES = 15;
+
+    private static final byte START = 0;
+    private static final byte IDENTIFIER = 1;
+    private static final byte SIGN = 2;
+    private static final byte INTEGER = 3;
+    private static final byte INTEGER_DOT = 4;
+    private static final byte DECIMAL = 5;
+    private static final byte COMPARISON_OPERATOR = 6;
+    private static final byte OPERATOR = 7;
+    private static final byte CHARACTER_OPEN = 8;
+    private static final byte CHARACTER_ESCAPE = 9;
+    private static final byte CHARACTER_BODY = 10;
+    private static final byte CHARACTER = 11;
+    private static final byte STRING = 12;
+    private static final byte STRING_ESCAPE = 13;
+    private static final byte STRING_CLOSE = 14;
+    private static final byte DEAD = 15;
+    private static final int STATES = 16;
+
+    /**
+     * The most characters the state machine reads past the end of a token,
+     * which happens for the {@code .} and digit after an integer.
+     */
+    private static final int LOOKAHEAD = 2;
+
+    /**
+     * The minimum number of characters lexed by each task in parallel mode.
+     */
+    private static final int SEGMENT_SIZE = 1 << 16;
+
+    /**
+     * Maps each ASCII character to its character class.
+     */
+    static final byte[] CLASS = new byte[128];
+
+    /**
+     * The next state for each state and character class, flattened as
+     * {@code state * CLASSES + class}.
+     */
+    private static final byte[] TRANSITIONS = new byte[STATES * CLASSES];
+
+    /**
+     * The token type accepted in each state, or null if the state does not
+     * end a token.
+     */
+    private static final Token.Type[] ACCEPT = new Token.Type[STATES];
+
+    /**
+     * The error reported if the machine stops in each state, or null if it
+     * should instead fall back to the last accepted prefix.
+     */
+    private static final String[] ERRORS = new String[STATES];
+
+    static {
+        for (char c = 'A'; c <= 'Z'; c++) {
+            CLASS[c] = LETTER;
+            CLASS[c + ('a' - 'A')] = LETTER;
+        }
+        CLASS['_'] = LETTER;
+        for (char c : "bnrt".toCharArray()) {
+            CLASS[c] = ESCAPE_LETTER;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            CLASS[c] = DIGIT;
+        }
+        CLASS['+'] = PLUS;
+        CLASS['-'] = MINUS;
+        CLASS['.'] = DOT;
+        CLASS['\''] = SINGLE_QUOTE;
+        CLASS['"'] = DOUBLE_QUOTE;
+        CLASS['\\'] = BACKSLASH;
+        CLASS['<'] = COMPARISON;
+        CLASS['>'] = COMPARISON;
+        CLASS['!'] = COMPARISON;
+        CLASS['='] = EQUALS;
+        CLASS[' '] = WHITESPACE;
+        CLASS['\b'] = WHITESPACE;
+        CLASS['\t'] = WHITESPACE;
+        CLASS['\n'] = NEWLINE;
+        CLASS['\r'] = NEWLINE;
+
+        Arrays.fill(TRANSITIONS, DEAD);
+        transition(START, OPERATOR, OTHER, DOT, BACKSLASH, WHITESPACE, NEWLINE);
+        transition(START, IDENTIFIER, LETTER, ESCAPE_LETTER);
+        transition(START, INTEGER, DIGIT);
+        transition(START, SIGN, PLUS, MINUS);
+        transition(START, CHARACTER_OPEN, SINGLE_QUOTE);
+        transition(START, STRING, DOUBLE_QUOTE);
+        transition(START, COMPARISON_OPERATOR, COMPARISON, EQUALS);
+        transition(IDENTIFIER, IDENTIFIER, LETTER, ESCAPE_LETTER, DIGIT, MINUS);
+        transition(SIGN, INTEGER, DIGIT);
+        transition(INTEGER, INTEGER, DIGIT);
+        transition(INTEGER, INTEGER_DOT, DOT);
+        transition(INTEGER_DOT, DECIMAL, DIGIT);
+        transition(DECIMAL, DECIMAL, DIGIT);
+        transition(COMPARISON_OPERATOR, OPERATOR, EQUALS);
+        transition(CHARACTER_OPEN, CHARACTER_BODY, OTHER, LETTER, ESCAPE_LETTER, DIGIT, PLUS, MINUS, DOT,
+                DOUBLE_QUOTE, COMPARISON, EQUALS, WHITESPACE);
+        transition(CHARACTER_OPEN, CHARACTER_ESCAPE, BACKSLASH);
+        transition(CHARACTER_ESCAPE, CHARACTER_BODY, ESCAPE_LETTER, SINGLE_QUOTE, DOUBLE_QUOTE, BACKSLASH);
+        transition(CHARACTER_BODY, CHARACTER, SINGLE_QUOTE);
+        transition(STRING, STRING, OTHER, LETTER, ESCAPE_LETTER, DIGIT, PLUS, MINUS, DOT,
+                SINGLE_QUOTE, COMPARISON, EQUALS, WHITESPACE);
+        transition(STRING, STRING_ESCAPE, BACKSLASH);
+        transition(STRING, STRING_CLOSE, DOUBLE_QUOTE);
+        transition(STRING_ESCAPE, STRING, ESCAPE_LETTER, SINGLE_QUOTE, DOUBLE_QUOTE, BACKSLASH);
+
+        ACCEPT[IDENTIFIER] = Token.Type.IDENTIFIER;
+        ACCEPT[SIGN] = Token.Type.OPERATOR;
+        ACCEPT[INTEGER] = Token.Type.INTEGER;
+        ACCEPT[DECIMAL] = Token.Type.DECIMAL;
+        ACCEPT[COMPARISON_OPERATOR] = Token.Type.OPERATOR;
+        ACCEPT[OPERATOR] = Token.Type.OPERATOR;
+        ACCEPT[CHARACTER] = Token.Type.CHARACTER;
+        ACCEPT[STRING_CLOSE] = Token.Type.STRING;
+
+        ERRORS[START] = "Unexpected end of input.";
+        ERRORS[CHARACTER_OPEN] = "Invalid character literal.";
+        ERRORS[CHARACTER_ESCAPE] = "Invalid escape sequence.";
+        ERRORS[CHARACTER_BODY] = "Unterminated character literal.";
+        ERRORS[STRING] = "Unterminated string literal.";
+        ERRORS[STRING_ESCAPE] = "Invalid escape sequence.";
+    }
+
+    private static void transition(byte from, byte to, byte... classes) {
+        for (byte c : classes) {
+            TRANSITIONS[from * CLASSES + c] = to;
+        }
+    }
+
+    /**
+     * Returns the character class of the given character. Only ASCII
+     * characters are significant to the grammar, so everything else takes the
+     * slow path to {@link #OTHER}.
+     */
+    static int classify(char c) {
+        return c < 128 ? CLASS[c] : OTHER;
+    }
+
+    private final CharStream chars;
+
+    public Lexer(String input) {
+        chars = new BufferedCharStream(input);
+    }
+
+    private Lexer(String input, int from, int to, SymbolTable symbols) {
+        chars = new BufferedCharStream(input, from, to, symbols);
+    }
+
+    private Lexer(GapText text, int from, SymbolTable symbols) {
+        chars = new BufferedCharStream(text, from, symbols);
+    }
+
+    public Lexer(Reader reader) {
+        chars = new BufferedCharStream(reader);
+    }
+
+    public Lexer(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Lexes UTF-8 encoded bytes directly, without decoding the input into a
+     * {@link String}. The buffer must not be modified while tokens from it
+     * are still in use, since their literals are decoded lazily.
+     */
+    public Lexer(ByteBuffer bytes) {
+        chars = new Utf8CharStream(bytes);
+    }
+
+    /**
+     * Memory-maps the given UTF-8 file and returns a lexer over its bytes.
+     * The mapping remains valid after the file channel is closed.
+     */
+    public static Lexer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Lexer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Repeatedly lexes the input using {@link #lexToken()}, also skipping over
+     * whitespace where appropriate.
+     */
+    public List<Token> lex() {
+        List<Token> tokens = new ArrayList<>();
+        Iterator<Token> iterator = tokens();
+        while (iterator.hasNext()) {
+            tokens.add(iterator.next());
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns an iterator which lexes tokens one at a time as they are
+     * requested. Only the characters of the token currently being lexed are
+     * retained, so memory use does not grow with the size of the input.
+     */
+    public Iterator<Token> tokens() {
+        return new Iterator<Token>() {
+
+            @Override
+            public boolean hasNext() {
+                skipWhitespace();
+                return chars.has(0);
+            }
+
+            @Override
+            public Token next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return lexToken();
+            }
+
+        };
+    }
+
+    private void skipWhitespace() {
+        chars.advanceRun(RunScanner.WHITESPACE);
+        chars.skip();
+    }
+
+    /**
+     * Returns true if lexers created now scan runs of whitespace, identifier
+     * characters and digits with the Vector API.
+     */
+    public static boolean isVectorized() {
+        return RunScanner.isVectorized();
+    }
+
+    /**
+     * Switches the Vector API fast path on or off for lexers created after
+     * this call. It stays off if the {@code jdk.incubator.vector} module is
+     * not available, which can be checked with {@link #isVectorized()}.
+     */
+    public static void setVectorized(boolean vectorized) {
+        RunScanner.setVectorized(vectorized);
+    }
+
+    /**
+     * Lexes the entire input into a packed {@link TokenBuffer}, which avoids
+     * creating a {@link Token} object per token.
+     */
+    public TokenBuffer lexBuffer() {
+        TokenBuffer buffer = chars.newBuffer();
+        skipWhitespace();
+        while (chars.has(0)) {
+            chars.emit(lexType(), buffer);
+            skipWhitespace();
+        }
+        return buffer;
+    }
+
+    /**
+     * Lexes the input on the common pool, see
+     * {@link #lexParallel(String, ForkJoinPool)}.
+     */
+    public static TokenBuffer lexParallel(String input) {
+        return lexParallel(input, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Lexes the input by splitting it into segments at newlines, lexing the
+     * segments concurrently on the given pool, and joining the results. The
+     * tokens (including symbol ids) are identical to {@link #lexBuffer()},
+     * and if the input is invalid the exception from the earliest segment is
+     * thrown, which is the same one sequential lexing would report.
+     *
+     * Inputs smaller than a couple of segments are lexed sequentially.
+     */
+    public static TokenBuffer lexParallel(String input, ForkJoinPool pool) {
+        int[] bounds = split(input, Math.max(SEGMENT_SIZE, input.length() / (pool.getParallelism() * 4)));
+        if (bounds.length == 2) {
+            return new Lexer(input).lexBuffer();
+        }
+        List<Callable<TokenBuffer>> segments = new ArrayList<>();
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            int from = bounds[i];
+            int to = bounds[i + 1];
+            segments.add(() -> new Lexer(input, from, to, new SymbolTable()).lexBuffer());
+        }
+        List<TokenBuffer> parts = new ArrayList<>();
+        for (Future<TokenBuffer> future : pool.invokeAll(segments)) {
+            try {
+                parts.add(future.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+        return TokenBuffer.concat(input, parts);
+    }
+
+    /**
+     * Returns the boundaries of segments of roughly the given size, each
+     * starting at a newline. A raw newline can never be part of a token (it
+     * ends any character or string literal with an error), so the state
+     * machine is always at the start of a token there, and the pre-scan only
+     * needs to find the next newline after each target position.
+     */
+    static int[] split(String input, int size) {
+        int[] bounds = new int[2 + input.length() / size];
+        int count = 1;
+        int position = size;
+        while (position < input.length()) {
+            int newline = input.indexOf('\n', position);
+            if (newline == -1) {
+                break;
+            }
+            bounds[count++] = newline;
+            position = newline + size;
+        }
+        bounds[count++] = input.length();
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * Updates a buffer lexed from a {@link String} in place after the text in
+     * {@code [offset, offset + removed)} is replaced with {@code inserted},
+     * and returns it. Anything holding token positions of the buffer (such as
+     * a lazily parsed source) must not be used after it is edited.
+     *
+     * Lexing restarts after the last token which cannot be affected by the
+     * edit and stops as soon as a new token starts at the (shifted) start of
+     * an old token after the edit, since everything from there on lexes the
+     * same as before. Only the tokens in between are replaced. The text and
+     * tokens are gap buffers with the gap at the last edit, and tokens after
+     * the gap are positioned relative to the end of the text, so the cost is
+     * proportional to the damaged window and the distance from the previous
+     * edit rather than the whole input.
+     */
+    public static TokenBuffer relex(TokenBuffer tokens, int offset, int removed, String inserted) {
+        return relex(tokens, offset, removed, inserted, new int[2]);
+    }
+
+    /**
+     * Relexes as above, storing the range of old tokens which were replaced
+     * in {@code range[0]} (inclusive) and {@code range[1]} (exclusive).
+     */
+    static TokenBuffer relex(TokenBuffer tokens, int offset, int removed, String inserted, int[] range) {
+        if (!tokens.isEditable()) {
+            throw new IllegalArgumentException("Incremental lexing requires tokens lexed from a String.");
+        }
+        int delta = inserted.length() - removed;
+        int first = tokens.firstAffected(offset, LOOKAHEAD);
+        int start = first > 0 ? tokens.getIndex(first - 1) + tokens.getLength(first - 1) : 0;
+        String original = tokens.getText().subSequence(offset, offset + removed).toString();
+        GapText text = (GapText) tokens.edit(first, offset, removed, inserted);
+        Lexer lexer = new Lexer(text, start, tokens.getSymbols());
+        TokenBuffer replacement = new TokenBuffer(text, tokens.getSymbols());
+        // indices of old tokens from first on are already shifted by delta
+        int next = first;
+        try {
+            lexer.skipWhitespace();
+            while (lexer.chars.has(0)) {
+                int index = lexer.chars.index;
+                if (index >= offset + inserted.length()) {
+                    while (next < tokens.size() && (tokens.getIndex(next) - delta < offset + removed || tokens.getIndex(next) < index)) {
+                        next++;
+                    }
+                    if (next < tokens.size() && tokens.getIndex(next) == index) {
+                        break;
+                    }
+                }
+                lexer.chars.emit(lexer.lexType(), replacement);
+                lexer.skipWhitespace();
+            }
+        } catch (ParseException e) {
+            text.replace(offset, inserted.length(), original);
+            throw e;
+        }
+        if (!lexer.chars.has(0)) {
+            next = tokens.size();
+        }
+        range[0] = first;
+        range[1] = next;
+        tokens.replace(first, next, replacement);
+        return tokens;
+    }
+
+    /**
+     * Lexes the next token, which should start with a valid character since
+     * whitespace is handled by {@link #lex()}.
+     */
+    public Token lexToken() {
+        return chars.emit(lexType());
+    }
+
+    /**
+     * Runs the state machine from the current character, advancing over the
+     * longest prefix that forms a token and returning its type. If the machine
+     * stops after the end of that prefix (such as the {@code .} in {@code 1.})
+     * the stream is moved back to the end of the prefix.
+     *
+     * States which loop on themselves over identifier characters or digits
+     * skip the rest of the run at once through the stream's {@link RunScanner}.
+     */
+    private Token.Type lexType() {
+        int state = START;
+        Token.Type accepted = null;
+        int acceptedLength = 0;
+        while (true) {
+            int type = chars.has(0) ? classify(chars.get(0)) : EOF;
+            int next = TRANSITIONS[state * CLASSES + type];
+            if (next == DEAD) {
+                break;
+            }
+            chars.advance();
+            state = next;
+            if (state == IDENTIFIER) {
+                chars.advanceRun(RunScanner.IDENTIFIER);
+            } else if (state == INTEGER || state == DECIMAL) {
+                chars.advanceRun(RunScanner.DIGIT);
+            }
+            if (ACCEPT[state] != null) {
+                accepted = ACCEPT[state];
+                acceptedLength = chars.length;
+            }
+        }
+        if (ERRORS[state] != null) {
+            throw new ParseException(ERRORS[state], chars.index);
+        }
+        while (chars.length > acceptedLength) {
+            chars.retreat();
+        }
+        return accepted;
+    }
+
+    /**
+     * A helper class maintaining the input string, current index of the char
+     * stream, and the current length of the token being matched.
+     *
+     * The index is always the absolute position in the input measured in
+     * chars, regardless of how the input is stored, so exceptions report the
+     * same index for a {@link String}, a {@link Reader} or a UTF-8 file.
+     */
+    public abstract static class CharStream {
+
+        final SymbolTable symbols;
+        final RunScanner scanner = RunScanner.get();
+        int index = 0;
+        int length = 0;
+
+        CharStream(SymbolTable symbols) {
+            this.symbols = symbols;
+        }
+
+        public abstract boolean has(int offset);
+
+        public abstract char get(int offset);
+
+        public void advance() {
+            index++;
+            length++;
+        }
+
+        /**
+         * Moves back over the last character of the current token.
+         */
+        public void retreat() {
+            index--;
+            length--;
+        }
+
+        public void skip() {
+            length = 0;
+        }
+
+        /**
+         * Advances over the run of characters of the given {@link RunScanner}
+         * kind starting at the current character.
+         */
+        public void advanceRun(int kind) {
+            while (has(0) && RunScanner.matches(kind, get(0))) {
+                advance();
+            }
+        }
+
+        public abstract Token emit(Token.Type type);
+
+        /**
+         * Adds the current token to the buffer instead of creating a token.
+         */
+        public abstract void emit(Token.Type type, TokenBuffer buffer);
+
+        /**
+         * Returns an empty buffer suited to this stream's storage, which
+         * shares the input text when it is available.
+         */
+        public abstract TokenBuffer newBuffer();
+
+    }
+
+    /**
+     * Characters are held in a sliding window over the input. When a lookahead
+     * runs past the end of the window the next chunk is read from the reader,
+     * discarding everything before the start of the current token.
+     */
+    static final class BufferedCharStream extends CharStream {
+
+        private static final int CHUNK_SIZE = 8192;
+
+        private final CharSequence input;
+        private Reader reader;
+        private char[] buffer;
+        private int start = 0;
+        private int limit;
+
+        BufferedCharStream(String input) {
+            this(input, 0, input.length(), new SymbolTable());
+        }
+
+        /**
+         * Creates a stream over {@code [from, to)} of the input, which interns
+         * identifiers into the given table. Indices remain absolute positions
+         * in the whole input. The range is read in chunks as it is lexed, so
+         * the input is never copied as a whole.
+         */
+        BufferedCharStream(String input, int from, int to, SymbolTable symbols) {
+            super(symbols);
+            this.input = input;
+            this.reader = reader(input, from, to);
+            this.index = from;
+            buffer = new char[Math.min(CHUNK_SIZE, to - from + 1)];
+            start = from;
+            limit = 0;
+        }
+
+        /**
+         * Creates a stream over editable text from the given offset, which
+         * is read in chunks as it is lexed instead of being copied up front.
+         */
+        BufferedCharStream(GapText text, int from, SymbolTable symbols) {
+            super(symbols);
+            this.input = text;
+            this.reader = text.reader(from);
+            this.index = from;
+            buffer = new char[CHUNK_SIZE];
+            start = from;
+            limit = 0;
+        }
+
+        BufferedCharStream(Reader reader) {
+            super(new SymbolTable());
+            this.input = null;
+            this.reader = reader;
+            buffer = new char[CHUNK_SIZE];
+            limit = 0;
+        }
+
+        /**
+         * Returns a reader over {@code [from, to)} of the input which copies
+         * each chunk straight out of the string.
+         */
+        private static Reader reader(String input, int from, int to) {
+            return new Reader() {
+
+                private int position = from;
+
+                @Override
+                public int read(char[] buffer, int off, int len) {
+                    if (position == to) {
+                        return -1;
+                    }
+                    int count = Math.min(len, to - position);
+                    input.getChars(position, position + count, buffer, off);
+                    position += count;
+                    return count;
+                }
+
+                @Override
+                public void close() {}
+
+            };
+        }
+
+        @Override
+        public boolean has(int offset) {
+            while (index - start + offset >= limit) {
+                if (!fill()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public char get(int offset) {
+            return buffer[index - start + offset];
+        }
+
+        /**
+         * Scans the window directly, reading the next chunk whenever the run
+         * reaches the end of it.
+         */
+        @Override
+        public void advanceRun(int kind) {
+            do {
+                int from = index - start;
+                int count = scanner.scan(buffer, from, limit, kind) - from;
+                index += count;
+                length += count;
+            } while (index - start == limit && has(0));
+        }
+
+        @Override
+        public Token emit(Token.Type type) {
+            int begin = index - length;
+            skip();
+            if (type == Token.Type.IDENTIFIER) {
+                int symbol = symbols.intern(buffer, begin - start, index - begin);
+                return new Token(type, symbols.getName(symbol), begin, symbol);
+            }
+            return new Token(type, new String(buffer, begin - start, index - begin), begin);
+        }
+
+        @Override
+        public void emit(Token.Type type, TokenBuffer tokens) {
+            int begin = index - length;
+            if (input != null) {
+                tokens.add(type, begin, length);
+            } else {
+                tokens.add(type, buffer, begin - start, length, begin);
+            }
+            skip();
+        }
+
+        @Override
+        public TokenBuffer newBuffer() {
+            return input != null ? new TokenBuffer(input, symbols) : new TokenBuffer(symbols);
+        }
+
+        /**
+         * Reads the next chunk from the reader, returning false once the input
+         * has been exhausted. Characters before the current token are dropped
+         * first, and the buffer only grows if a single token fills it.
+         */
+        private boolean fill() {
+            if (reader == null) {
+                return false;
+            }
+            int discard = index - length - start;
+            if (discard > 0) {
+                System.arraycopy(buffer, discard, buffer, 0, limit - discard);
+                start += discard;
+                limit -= discard;
+            }
+            if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            try {
+                int read = reader.read(buffer, limit, buffer.length - limit);
+                if (read == -1) {
+                    reader.close();
+                    reader = null;
+                    return false;
+                }
+                limit += read;
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+    }
+
+    /**
+     * Scans UTF-8 encoded bytes in place without decoding them first. A code
+     * point of four bytes is two chars, a high and a low surrogate, which are
+     * stepped over one at a time like the {@link String} lexer does. Emitted
+     * tokens keep a reference to the bytes and are decoded by
+     * {@link Token#getLiteral()} on first use.
+     */
+    static final class Utf8CharStream extends CharStream {
+
+        private final ByteBuffer bytes;
+        private int position = 0;
+        private int begin = 0;
+
+        /**
+         * Whether the current char is the low surrogate of the code point at
+         * the position, and likewise for the first char of the current token.
+         */
+        private boolean low = false;
+        private boolean beginLow = false;
+
+        Utf8CharStream(ByteBuffer bytes) {
+            super(new SymbolTable());
+            this.bytes = bytes;
+        }
+
+        @Override
+        public boolean has(int offset) {
+            return locate(offset) >> 1 < bytes.limit();
+        }
+
+        @Override
+        public char get(int offset) {
+            long location = locate(offset);
+            int position = (int) (location >> 1);
+            int lead = bytes.get(position) & 0xFF;
+            if (lead < 0x80) {
+                return (char) lead;
+            }
+            int width = width(position);
+            if (width == 1) {
+                return '\uFFFD';
+            }
+            int codePoint = lead & (0xFF >> (width + 1));
+            for (int i = 1; i < width; i++) {
+                codePoint = (codePoint << 6) | (bytes.get(position + i) & 0x3F);
+            }
+            if (width < 4) {
+                return (char) codePoint;
+            }
+            return (location & 1) == 0 ? Character.highSurrogate(codePoint) : Character.lowSurrogate(codePoint);
+        }
+
+        @Override
+        public void advance() {
+            if (!low && width(position) == 4) {
+                low = true;
+            } else {
+                position += width(position);
+                low = false;
+            }
+            index++;
+            length++;
+        }
+
+        /**
+         * Runs are always ASCII, so the bytes are scanned directly and each
+         * one is a single char.
+         */
+        @Override
+        public void advanceRun(int kind) {
+            if (low) {
+                return;
+            }
+            int count = scanner.scan(bytes, position, bytes.limit(), kind) - position;
+            position += count;
+            index += count;
+            length += count;
+        }
+
+        @Override
+        public void retreat() {
+            if (low) {
+                low = false;
+            } else {
+                do {
+                    position--;
+                } while ((bytes.get(position) & 0xC0) == 0x80);
+                low = width(position) == 4;
+            }
+            index--;
+            length--;
+        }
+
+        @Override
+        public void skip() {
+            length = 0;
+            begin = position;
+            beginLow = low;
+        }
+
+        @Override
+        public Token emit(Token.Type type) {
+            Token token;
+            if (type == Token.Type.IDENTIFIER) {
+                int symbol = symbols.intern(bytes, begin, position - begin);
+                token = new Token(type, symbols.getName(symbol), index - length, symbol);
+            } else if (beginLow || low) {
+                byte[] pair = new byte[4];
+                bytes.get(begin, pair);
+                String literal = new String(pair, StandardCharsets.UTF_8).substring(beginLow ? 1 : 0, beginLow ? 2 : 1);
+                token = new Token(type, literal, index - length);
+            } else {
+                token = new Token(type, bytes, begin, position - begin, index - length);
+            }
+            skip();
+            return token;
+        }
+
+        /**
+         * A token which splits a code point is a single surrogate, since
+         * surrogates are only ever part of a longer token inside a literal,
+         * and it is added as the half of the code point at its start.
+         */
+        @Override
+        public void emit(Token.Type type, TokenBuffer tokens) {
+            if (beginLow || low) {
+                tokens.addSurrogate(type, begin, beginLow, index - length);
+            } else {
+                tokens.add(type, begin, position - begin, length, index - length);
+            }
+            skip();
+        }
+
+        @Override
+        public TokenBuffer newBuffer() {
+            return new TokenBuffer(bytes, symbols);
+        }
+
+        /**
+         * Returns the position of the char at the given offset from the
+         * current one, shifted left by one with the low bit set if it is the
+         * low surrogate of the code point there.
+         */
+        private long locate(int offset) {
+            int position = this.position;
+            boolean low = this.low;
+            for (int i = 0; i < offset && position < bytes.limit(); i++) {
+                if (!low && width(position) == 4) {
+                    low = true;
+                } else {
+                    position += width(position);
+                    low = false;
+                }
+            }
+            return (long) position << 1 | (low ? 1 : 0);
+        }
+
+        /**
+         * Returns the number of bytes in the code point starting at the given
+         * position, clamped to the end of the input. Stray continuation bytes
+         * are treated as single characters.
+         */
+        private int width(int position) {
+            int lead = bytes.get(position) & 0xFF;
+            int width = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+            return Math.min(width, bytes.limit() - position);
+        }
+
+    }
+
+}
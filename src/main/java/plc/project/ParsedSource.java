@@ -0,0 +1,116 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A source parsed from a {@link String} along with its tokens and the range
+ * of tokens of each top level field and method, so that it can be edited
+ * without parsing the whole source again.
+ *
+ * An edit is relexed with {@link Lexer#relex(TokenBuffer, int, int, String)}
+ * and only the units overlapping the relexed tokens are parsed again. Every
+ * other {@link Ast.Field} and {@link Ast.Method} is the same instance as in
+ * the previous source, so anything keyed on node identity remains valid.
+ * The tokens are edited in place and shared with the edited source, so only
+ * the latest source can be edited again. Reused units keep the ids they were
+ * given by the {@link Parser}, which may collide with the ids of the units
+ * parsed again; {@link Analysis} tolerates this.
+ */
+public final class ParsedSource {
+
+    private final TokenBuffer tokens;
+    private final List<Ast> units;
+    private final int[] bounds;
+    private final Ast.Source source;
+
+    /**
+     * Creates a source from its units in order, where unit {@code i} is
+     * parsed from the tokens in {@code [bounds[i], bounds[i + 1])}.
+     */
+    private ParsedSource(TokenBuffer tokens, List<Ast> units, int[] bounds) {
+        this.tokens = tokens;
+        this.units = units;
+        this.bounds = bounds;
+        List<Ast.Field> fields = new ArrayList<>();
+        List<Ast.Method> methods = new ArrayList<>();
+        for (Ast unit : units) {
+            if (unit instanceof Ast.Field) {
+                fields.add((Ast.Field) unit);
+            } else {
+                methods.add((Ast.Method) unit);
+            }
+        }
+        this.source = new Ast.Source(fields, methods);
+        this.source.id = tokens.size();
+    }
+
+    public static ParsedSource parse(String input) throws ParseException {
+        TokenBuffer tokens = new Lexer(input).lexBuffer();
+        List<Ast> units = new ArrayList<>();
+        int[] bounds = Parser.parseUnits(tokens, 0, tokens.size(), units);
+        return new ParsedSource(tokens, units, bounds);
+    }
+
+    public Ast.Source getSource() {
+        return source;
+    }
+
+    public TokenBuffer getTokens() {
+        return tokens;
+    }
+
+    /**
+     * Returns the source after the text in {@code [offset, offset + removed)}
+     * is replaced with {@code inserted}, which is equal to parsing the edited
+     * text from scratch and throws the same {@link ParseException} if it is
+     * invalid.
+     *
+     * The units overlapping the relexed tokens are parsed again on their own,
+     * which can only fail if the edit moved a unit boundary (such as deleting
+     * an {@code END}), in which case everything from the first of them to the
+     * end of the source is parsed again instead. If that fails too the edit
+     * is undone, so this source is unchanged.
+     */
+    public ParsedSource edit(int offset, int removed, String inserted) throws ParseException {
+        int[] range = new int[2];
+        int size = tokens.size();
+        String original = tokens.getText().subSequence(offset, offset + removed).toString();
+        TokenBuffer edited = Lexer.relex(tokens, offset, removed, inserted, range);
+        int shift = edited.size() - size;
+        int count = units.size();
+        int first = 0;
+        while (first < count && bounds[first + 1] <= range[0]) {
+            first++;
+        }
+        int last = first;
+        while (last < count && bounds[last] < range[1]) {
+            last++;
+        }
+        List<Ast> reparsed = new ArrayList<>();
+        int[] reparsedBounds;
+        try {
+            reparsedBounds = Parser.parseUnits(edited, bounds[first], bounds[last] + shift, reparsed);
+        } catch (ParseException e) {
+            reparsed.clear();
+            try {
+                reparsedBounds = Parser.parseUnits(edited, bounds[first], edited.size(), reparsed);
+            } catch (ParseException f) {
+                Lexer.relex(edited, offset, inserted.length(), original);
+                throw f;
+            }
+            last = count;
+        }
+        List<Ast> units = new ArrayList<>(this.units.subList(0, first));
+        units.addAll(reparsed);
+        units.addAll(this.units.subList(last, count));
+        int[] bounds = new int[units.size() + 1];
+        System.arraycopy(this.bounds, 0, bounds, 0, first);
+        System.arraycopy(reparsedBounds, 0, bounds, first, reparsed.size());
+        for (int i = last; i <= count; i++) {
+            bounds[first + reparsed.size() + i - last] = this.bounds[i] + shift;
+        }
+        return new ParsedSource(edited, units, bounds);
+    }
+
+}
@@ -2,42 +2,140 @@ package plc.project;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class Parser {
 
-    private final List<Token> tokens;
+    /**
+     * The binary operators and their binding powers; a higher power binds
+     * more tightly, and every operator is left associative.
+     */
+    private static final String[] OPERATORS = {
+            "OR", "AND", "<", ">", "<=", ">=", "==", "!=", "+", "-", "*", "/"
+    };
+    private static final int[] POWERS = {
+            1, 2, 3, 3, 3, 3, 3, 3, 4, 4, 5, 5
+    };
+
+    /**
+     * Indices into {@link #OPERATORS} by keyword symbol id, by the character
+     * of a single character operator, and by the first character of a two
+     * character operator ending in {@code =}.
+     */
+    private static final byte[] KEYWORD_OPERATORS;
+    private static final byte[] SINGLE_OPERATORS = new byte[128];
+    private static final byte[] EQUALS_OPERATORS = new byte[128];
+
+    static {
+        SymbolTable keywords = new SymbolTable();
+        KEYWORD_OPERATORS = new byte[keywords.size()];
+        Arrays.fill(KEYWORD_OPERATORS, (byte) -1);
+        Arrays.fill(SINGLE_OPERATORS, (byte) -1);
+        Arrays.fill(EQUALS_OPERATORS, (byte) -1);
+        for (int i = 0; i < OPERATORS.length; i++) {
+            String operator = OPERATORS[i];
+            if (Character.isLetter(operator.charAt(0))) {
+                KEYWORD_OPERATORS[keywords.intern(operator)] = (byte) i;
+            } else if (operator.length() == 1) {
+                SINGLE_OPERATORS[operator.charAt(0)] = (byte) i;
+            } else {
+                EQUALS_OPERATORS[operator.charAt(0)] = (byte) i;
+            }
+        }
+    }
+
+    /**
+     * The minimum number of tokens parsed by each task in parallel mode.
+     */
+    private static final int CHUNK_SIZE = 1024;
+
+    private final TokenBuffer tokens;
+    private final int end;
     private int current = 0;
 
+    /**
+     * The id given to the next node, see {@link #number(Ast)}.
+     */
+    private int nextId;
+
+    /**
+     * The errors recorded by {@link #parseSource(List)}, or null if the first
+     * error should be thrown.
+     */
+    private List<ParseException> errors = null;
+
+    /**
+     * The operand and operator stacks of {@link #parseBinaryExpression()},
+     * shared by every frame and reused between expressions.
+     */
+    private final List<Ast.Expr> operands = new ArrayList<>();
+    private int[] operators = new int[16];
+    private int operatorCount = 0;
+
     public Parser(List<Token> tokens) {
+        this(TokenBuffer.of(tokens));
+    }
+
+    public Parser(TokenBuffer tokens) {
+        this(tokens, 0, tokens.size());
+    }
+
+    /**
+     * Creates a parser over the tokens in {@code [from, to)}, which treats
+     * the end of that range as the end of the input.
+     */
+    private Parser(TokenBuffer tokens, int from, int to) {
         this.tokens = tokens;
+        this.current = from;
+        this.end = to;
+        this.nextId = from;
+    }
+
+    /**
+     * Gives the node the next id of this parse. Ids start at the first token
+     * of the parser's range, and every node consumes at least one token of
+     * its own, so the ids given to the nodes of a range of tokens fall inside
+     * that range. This lets a lazily parsed body be numbered when it is
+     * parsed, from the range of its tokens, and lets ranges parsed in
+     * parallel be numbered independently. The source is numbered last, so
+     * its id bounds the ids below it. See {@link Analysis}.
+     */
+    private <T extends Ast> T number(T ast) {
+        ast.id = nextId++;
+        return ast;
     }
 
     private Ast.Stmt parseIfStatement() throws ParseException {
         advance();
         Ast.Expr condition = parseExpression();
-        consume(Token.Type.IDENTIFIER, "DO", "Expected 'DO' after IF condition.");
-        List<Ast.Stmt> thenBranch = new ArrayList<>();
-        while (!check(Token.Type.IDENTIFIER, "ELSE") && !check(Token.Type.IDENTIFIER, "END")) {
-            thenBranch.add(parseStatement());
-        }
+        consume(SymbolTable.DO, "Expected 'DO' after IF condition.");
+        List<Ast.Stmt> thenBranch = parseBlock(true);
         List<Ast.Stmt> elseBranch = new ArrayList<>();
-        if (check(Token.Type.IDENTIFIER, "ELSE")) {
+        if (check(SymbolTable.ELSE)) {
             advance();
-            while (!check(Token.Type.IDENTIFIER, "END")) {
-                elseBranch.add(parseStatement());
-            }
+            elseBranch = parseBlock(false);
         }
-        return new Ast.Stmt.If(condition, thenBranch, elseBranch);
+        return number(new Ast.Stmt.If(condition, thenBranch, elseBranch));
     }
 
     private Ast.Stmt parseReturnStatement() throws ParseException {
         advance();
         Ast.Expr condition = parseExpression();
         consume(Token.Type.OPERATOR, ";", "Expected ;");
-        return new Ast.Stmt.Return(condition);
+        return number(new Ast.Stmt.Return(condition));
     }
 
 //    private Ast.Stmt parseFORStatement() throws ParseException {
@@ -56,59 +154,56 @@ public class Parser {
 //    }
 private Ast.Stmt.For parseFORStatement() throws ParseException {
     advance();  // consume 'FOR'
-    String loopVariable = peek().getLiteral();
+    String loopVariable = peekLiteral();
     advance();  // consume variable name
-    consume(Token.Type.IDENTIFIER, "IN", "Expected 'IN' after loop variable.");
+    consume(SymbolTable.IN, "Expected 'IN' after loop variable.");
 
     Ast.Expr iterable = parseExpression();
-    consume(Token.Type.IDENTIFIER, "DO", "Expected 'DO' after iterable expression.");
+    consume(SymbolTable.DO, "Expected 'DO' after iterable expression.");
 
-    List<Ast.Stmt> thenBranch = new ArrayList<>();
-    while (!check(Token.Type.IDENTIFIER, "END")) {
-        thenBranch.add(parseStatement());  // This will handle the statement and its semicolon
-    }
+    List<Ast.Stmt> thenBranch = parseBlock(false);
 
-    consume(Token.Type.IDENTIFIER, "END", "Expected 'END' to close the 'FOR' loop.");
-    return new Ast.Stmt.For(loopVariable, iterable, thenBranch);
+    consume(SymbolTable.END, "Expected 'END' to close the 'FOR' loop.");
+    return number(new Ast.Stmt.For(loopVariable, iterable, thenBranch));
 }
 
     private Ast.Stmt parseLetStatement() throws ParseException {
         advance();
-        if (check(Token.Type.IDENTIFIER, peek().getLiteral())) {
-            String variable = peek().getLiteral();
+        if (check(Token.Type.IDENTIFIER)) {
+            String variable = peekLiteral();
             advance();
             try {
                 if (matchOperator("=")) {
                     Ast.Expr value = parseExpression();
                     consume(Token.Type.OPERATOR, ";", "Expected ';' after assignment.");
-                    return new Ast.Stmt.Declaration(variable, Optional.of(value));
+                    return number(new Ast.Stmt.Declaration(variable, Optional.of(value)));
                 } else if (matchOperator(";")) {
-                    return new Ast.Stmt.Declaration(variable, Optional.empty());
+                    return number(new Ast.Stmt.Declaration(variable, Optional.empty()));
                 }
             } catch (ParseException e) {
                 System.err.println("Error: " + e.getMessage());
                 throw e;
             }
         }
-        return new Ast.Stmt.Declaration(null, Optional.empty());
+        return number(new Ast.Stmt.Declaration(null, Optional.empty()));
     }
 
     private Ast.Field parseFieldStatement() throws ParseException {
         advance();
-        if (check(Token.Type.IDENTIFIER, peek().getLiteral())) {
-            String variable = peek().getLiteral();
+        if (check(Token.Type.IDENTIFIER)) {
+            String variable = peekLiteral();
             advance();
             consume(Token.Type.OPERATOR, ":", "Expected ':' after identifier in field declaration.");
-            String typeName = peek().getLiteral();
+            String typeName = peekLiteral();
             consume(Token.Type.IDENTIFIER, typeName, "Expected type identifier after ':'.");
             Optional<Ast.Expr> value = Optional.empty();
             if (matchOperator("=")) {
                 value = Optional.of(parseExpression());
             }
             consume(Token.Type.OPERATOR, ";", "Expected ';' after field declaration.");
-            return new Ast.Field(variable, typeName, value);
+            return number(new Ast.Field(variable, typeName, value));
         } else {
-            throw error(peek(), "Expected identifier after 'LET'.");
+            throw error("Expected identifier after 'LET'.");
         }
     }
 //    public Ast.Field parseField() throws ParseException {
@@ -131,55 +226,366 @@ private Ast.Stmt.For parseFORStatement() throws ParseException {
 //    }
 public Ast.Field parseField() {
     advance(); // consume LET
-    String name = consume(Token.Type.IDENTIFIER, "Expected field name").getLiteral();
+    String name = consume(Token.Type.IDENTIFIER, "Expected field name");
     consume(Token.Type.OPERATOR, ":", "Expected ':' after field name");
-    String type = consume(Token.Type.IDENTIFIER, "Expected type").getLiteral();
+    String type = consume(Token.Type.IDENTIFIER, "Expected type");
     Optional<Ast.Expr> value = Optional.empty();
     if (matchOperator("=")) {
         value = Optional.of(parseExpression());
     }
     consume(Token.Type.OPERATOR, ";", "Expected ';' after field declaration");
-    return new Ast.Field(name, type, value);
+    return number(new Ast.Field(name, type, value));
 }
 
     private Ast.Stmt parseWHILEStatement() throws ParseException {
         advance();
         Ast.Expr condition = parseExpression();
-        consume(Token.Type.IDENTIFIER, "DO", "Expected 'DO' after WHILE condition.");
-        List<Ast.Stmt> statements = new ArrayList<>();
-        while (!check(Token.Type.IDENTIFIER, "END")) {
-            statements.add(parseStatement());
-        }
-        consume(Token.Type.IDENTIFIER, "END", "Expected 'END' to close the WHILE loop.");
-        return new Ast.Stmt.While(condition, statements);
+        consume(SymbolTable.DO, "Expected 'DO' after WHILE condition.");
+        List<Ast.Stmt> statements = parseBlock(false);
+        consume(SymbolTable.END, "Expected 'END' to close the WHILE loop.");
+        return number(new Ast.Stmt.While(condition, statements));
     }
 
     public Ast.Source parseSource() throws ParseException {
+        return parseSource(false);
+    }
+
+    /**
+     * Parses the source like {@link #parseSource()}, except that each method
+     * body is only scanned for the {@code END} matching its {@code DO}. The
+     * body is parsed the first time its statements are accessed, which is
+     * also when any {@link ParseException} inside it is thrown.
+     */
+    public Ast.Source parseSourceLazy() throws ParseException {
+        return parseSource(true);
+    }
+
+    private Ast.Source parseSource(boolean lazy) throws ParseException {
         List<Ast.Field> fields = new ArrayList<>();
         List<Ast.Method> methods = new ArrayList<>();
+        parseSource(lazy, fields::add, methods::add);
+        return number(new Ast.Source(fields, methods));
+    }
+
+    /**
+     * Parses the source, passing each field and method to the consumers as
+     * soon as it has been parsed instead of collecting them, so later stages
+     * can start before parsing has finished and nothing holds on to units
+     * which have already been processed. If the source is invalid the units
+     * before the error have already been passed on when it is thrown.
+     */
+    public void parseSource(Consumer<? super Ast.Field> fields, Consumer<? super Ast.Method> methods) throws ParseException {
+        parseSource(false, fields, methods);
+    }
+
+    /**
+     * Returns a publisher which parses the source on the given executor for
+     * each subscriber, emitting every {@link Ast.Field} and
+     * {@link Ast.Method} in source order. Parsing only runs while the
+     * subscriber has outstanding demand: a request schedules a task which
+     * parses and emits units until the demand is used up and then returns,
+     * so no thread waits on a slow subscriber. Parsing stops if the
+     * subscriber cancels. The subscription completes after the last unit, or
+     * completes exceptionally with the {@link ParseException} once all units
+     * before it have been delivered.
+     *
+     * An exception thrown by the subscriber's {@code onNext} cancels the
+     * subscription and is rethrown on the executor, rather than being passed
+     * back to {@code onError}.
+     */
+    public Flow.Publisher<Ast> publishSource(Executor executor) {
+        int start = current;
+        return subscriber -> subscriber.onSubscribe(new SourceSubscription(new Parser(tokens, start, end), subscriber, executor));
+    }
+
+    /**
+     * Parses the source without stopping at the first error. Each error is
+     * added to the list, and parsing resumes at the next statement if it was
+     * inside a block, or otherwise at the next field or method. Returns every
+     * field and method which could be parsed, where methods omit any
+     * statements which were invalid.
+     */
+    public Ast.Source parseSource(List<ParseException> errors) {
+        this.errors = errors;
+        try {
+            return parseSource(false);
+        } finally {
+            this.errors = null;
+        }
+    }
+
+    private void parseSource(boolean lazy, Consumer<? super Ast.Field> fields, Consumer<? super Ast.Method> methods) throws ParseException {
         while (!isAtEnd()) {
-            if (matchLet("LET")) {
-                fields.add(parseFieldStatement());
-            } else if (matchDEF("DEF")) {
-                methods.add(parseDefStatement());
-            } else {
-                throw error(peek(), "Unexpected statement.");
+            int start = current;
+            try {
+                Ast unit = parseUnit(lazy);
+                if (unit instanceof Ast.Field) {
+                    fields.accept((Ast.Field) unit);
+                } else {
+                    methods.accept((Ast.Method) unit);
+                }
+            } catch (ParseException e) {
+                if (errors == null) {
+                    throw e;
+                }
+                errors.add(e);
+                synchronizeUnit(start);
+            }
+        }
+    }
+
+    private Ast parseUnit(boolean lazy) throws ParseException {
+        switch (peekSymbol()) {
+            case SymbolTable.LET:
+                return parseFieldStatement();
+            case SymbolTable.DEF:
+                return parseDefStatement(lazy);
+            default:
+                throw error("Unexpected statement.");
+        }
+    }
+
+    /**
+     * Parses the fields and methods in {@code [from, to)} of the tokens into
+     * the given list in source order, returning the index of the first token
+     * of each unit followed by {@code to}.
+     */
+    static int[] parseUnits(TokenBuffer tokens, int from, int to, List<Ast> units) throws ParseException {
+        Parser parser = new Parser(tokens, from, to);
+        int[] bounds = new int[16];
+        int count = 0;
+        while (!parser.isAtEnd()) {
+            if (count + 1 == bounds.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            bounds[count++] = parser.current;
+            units.add(parser.parseUnit(false));
+        }
+        bounds[count++] = to;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * Skips the rest of a field or method starting at the given token which
+     * could not be parsed. A method with a {@code DO} before any other
+     * keyword is skipped up to its matching {@code END}, and anything else up
+     * to the next {@code LET} or {@code DEF}.
+     */
+    private void synchronizeUnit(int start) {
+        if (tokens.getSymbol(start) == SymbolTable.DEF) {
+            int i = start + 1;
+            while (i < end && !SymbolTable.isKeyword(tokens.getSymbol(i))) {
+                i++;
             }
+            if (i < end && tokens.getSymbol(i) == SymbolTable.DO) {
+                int close = matchingEnd(i + 1);
+                if (close != -1 && close >= current) {
+                    current = close + 1;
+                    return;
+                }
+            }
+        }
+        current = Math.max(current, start + 1);
+        while (!isAtEnd() && !check(SymbolTable.LET) && !check(SymbolTable.DEF)) {
+            current++;
         }
-        return new Ast.Source(fields, methods);
+    }
+
+    /**
+     * Parses the statements of a block up to its {@code END}, or an
+     * {@code ELSE} if it may end the block, which is not consumed.
+     *
+     * When recovering from errors, an invalid statement is recorded and
+     * skipped, and the block also ends at the end of the input or a
+     * {@code DEF}, neither of which can continue it.
+     */
+    private List<Ast.Stmt> parseBlock(boolean elseEnds) throws ParseException {
+        List<Ast.Stmt> statements = new ArrayList<>();
+        while (!check(SymbolTable.END) && !(elseEnds && check(SymbolTable.ELSE))) {
+            if (errors == null) {
+                statements.add(parseStatement());
+                continue;
+            }
+            if (isAtEnd() || check(SymbolTable.DEF)) {
+                break;
+            }
+            int start = current;
+            try {
+                statements.add(parseStatement());
+            } catch (ParseException e) {
+                errors.add(e);
+                synchronizeStatement(start);
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Skips the rest of a statement starting at the given token which could
+     * not be parsed, either past the next {@code ;} or up to a keyword which
+     * starts another statement or ends the block. At least one token is
+     * always skipped so that parsing makes progress.
+     */
+    private void synchronizeStatement(int start) {
+        current = Math.max(current, start + 1);
+        while (!isAtEnd()) {
+            if (check(Token.Type.OPERATOR, ";")) {
+                current++;
+                return;
+            }
+            switch (peekSymbol()) {
+                case SymbolTable.LET:
+                case SymbolTable.RETURN:
+                case SymbolTable.IF:
+                case SymbolTable.FOR:
+                case SymbolTable.WHILE:
+                case SymbolTable.END:
+                case SymbolTable.ELSE:
+                case SymbolTable.DEF:
+                    return;
+            }
+            current++;
+        }
+    }
+
+    /**
+     * Parses the source on the common pool, see
+     * {@link #parseSourceParallel(ForkJoinPool)}.
+     */
+    public Ast.Source parseSourceParallel() throws ParseException {
+        return parseSourceParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses the source by splitting the remaining tokens into chunks of
+     * whole fields and methods, parsing the chunks concurrently on the given
+     * pool and joining the results in source order.
+     *
+     * A chunk only succeeds if every unit in it parses without looking past
+     * the end of the chunk, in which case the sequential parse passes through
+     * the same boundaries and produces the same tree. If any chunk fails to
+     * parse the whole source is parsed again sequentially, so errors are
+     * identical to {@link #parseSource()}. Any other exception in a chunk is
+     * rethrown.
+     */
+    public Ast.Source parseSourceParallel(ForkJoinPool pool) throws ParseException {
+        int start = current;
+        int[] bounds = splitUnits(Math.max(CHUNK_SIZE, (end - start) / (pool.getParallelism() * 4)));
+        if (bounds == null || bounds.length == 2) {
+            return parseSource();
+        }
+        List<Callable<Ast.Source>> chunks = new ArrayList<>();
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            int from = bounds[i];
+            int to = bounds[i + 1];
+            chunks.add(() -> new Parser(tokens, from, to).parseSource());
+        }
+        List<Ast.Field> fields = new ArrayList<>();
+        List<Ast.Method> methods = new ArrayList<>();
+        for (Future<Ast.Source> future : pool.invokeAll(chunks)) {
+            try {
+                Ast.Source source = future.get();
+                fields.addAll(source.getFields());
+                methods.addAll(source.getMethods());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof ParseException) {
+                    current = start;
+                    return parseSource();
+                } else if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+        current = end;
+        nextId = end;
+        return number(new Ast.Source(fields, methods));
+    }
+
+    /**
+     * Pre-scans the remaining tokens for the boundaries of top level units,
+     * where a field ends at the first {@code ;} and a method at the
+     * {@code END} matching its first {@code DO}, and groups consecutive units
+     * into chunks of at least the given number of tokens. Returns null if the
+     * tokens are not a sequence of units, leaving the error to
+     * {@link #parseSource()}.
+     */
+    private int[] splitUnits(int size) {
+        int[] bounds = new int[2 + (end - current) / size];
+        int count = 0;
+        bounds[count++] = current;
+        int i = current;
+        while (i < end) {
+            switch (tokens.getSymbol(i)) {
+                case SymbolTable.LET:
+                    while (i < end && !(tokens.getType(i) == Token.Type.OPERATOR && tokens.literalEquals(i, ";"))) {
+                        i++;
+                    }
+                    if (i == end) {
+                        return null;
+                    }
+                    i++;
+                    break;
+                case SymbolTable.DEF:
+                    while (i < end && tokens.getSymbol(i) != SymbolTable.DO) {
+                        if (tokens.getSymbol(i) == SymbolTable.END) {
+                            return null;
+                        }
+                        i++;
+                    }
+                    if (i == end) {
+                        return null;
+                    }
+                    i = matchingEnd(i + 1);
+                    if (i == -1) {
+                        return null;
+                    }
+                    i++;
+                    break;
+                default:
+                    return null;
+            }
+            if (i - bounds[count - 1] >= size && i < end) {
+                bounds[count++] = i;
+            }
+        }
+        bounds[count++] = end;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * Returns the index of the {@code END} closing a block whose {@code DO}
+     * comes just before the given index, or -1 if it is never closed. Every
+     * block (methods, IF/ELSE, FOR and WHILE) is a {@code DO} matched by
+     * exactly one {@code END}.
+     */
+    private int matchingEnd(int i) {
+        int depth = 1;
+        for (; i < end; i++) {
+            int symbol = tokens.getSymbol(i);
+            if (symbol == SymbolTable.DO) {
+                depth++;
+            } else if (symbol == SymbolTable.END && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     private Ast.Stmt.Declaration parseDeclarationStatement() throws ParseException {
         advance();
-        if (check(Token.Type.IDENTIFIER, peek().getLiteral())) {
-            String variable = peek().getLiteral();
+        if (check(Token.Type.IDENTIFIER)) {
+            String variable = peekLiteral();
             advance();
             Optional<String> typeName = Optional.empty();
             if (matchOperator(":")) {
                 if (!check(Token.Type.IDENTIFIER)) {
-                    throw error(peek(), "Expected type identifier after ':'.");
+                    throw error("Expected type identifier after ':'.");
                 }
-                typeName = Optional.of(peek().getLiteral());
+                typeName = Optional.of(peekLiteral());
                 advance();
             }
             Optional<Ast.Expr> value = Optional.empty();
@@ -187,27 +593,27 @@ public Ast.Field parseField() {
                 value = Optional.of(parseExpression());
             }
             consume(Token.Type.OPERATOR, ";", "Expected ';' after declaration.");
-            return new Ast.Stmt.Declaration(variable, typeName, value);
+            return number(new Ast.Stmt.Declaration(variable, typeName, value));
         } else {
-            throw error(peek(), "Expected identifier after 'LET'.");
+            throw error("Expected identifier after 'LET'.");
         }
     }
 
-    private Ast.Method parseDefStatement() throws ParseException {
+    private Ast.Method parseDefStatement(boolean lazy) throws ParseException {
         advance();
         if (!check(Token.Type.IDENTIFIER)) {
-            throw error(peek(), "Expected method name after 'DEF'.");
+            throw error("Expected method name after 'DEF'.");
         }
-        String methodName = peek().getLiteral();
+        String methodName = peekLiteral();
         advance();
         consume(Token.Type.OPERATOR, "(", "Expected '(' after method name.");
         List<String> parameters = new ArrayList<>();
         if (!check(Token.Type.OPERATOR, ")")) {
             do {
                 if (!check(Token.Type.IDENTIFIER)) {
-                    throw error(peek(), "Expected parameter name.");
+                    throw error("Expected parameter name.");
                 }
-                parameters.add(peek().getLiteral());
+                parameters.add(peekLiteral());
                 advance();
             } while (matchOperator(","));
         }
@@ -215,18 +621,26 @@ public Ast.Field parseField() {
         Optional<String> returnType = Optional.empty();
         if (matchOperator(":")) {
             if (!check(Token.Type.IDENTIFIER)) {
-                throw error(peek(), "Expected return type identifier after ':'.");
+                throw error("Expected return type identifier after ':'.");
             }
-            returnType = Optional.of(peek().getLiteral());
+            returnType = Optional.of(peekLiteral());
             advance();
         }
-        consume(Token.Type.IDENTIFIER, "DO", "Expected 'DO' to start the method body.");
-        List<Ast.Stmt> bodyStatements = new ArrayList<>();
-        while (!check(Token.Type.IDENTIFIER, "END")) {
-            bodyStatements.add(parseStatement());
+        consume(SymbolTable.DO, "Expected 'DO' to start the method body.");
+        if (lazy) {
+            int close = matchingEnd(current);
+            if (close == -1) {
+                current = end;
+                throw error("Expected 'END' to close the method.");
+            }
+            List<Ast.Stmt> bodyStatements = new LazyStatements(tokens, current, close);
+            current = close + 1;
+            nextId = current;
+            return number(new Ast.Method(methodName, parameters, new ArrayList<>(), returnType, bodyStatements));
         }
-        consume(Token.Type.IDENTIFIER, "END", "Expected 'END' to close the method.");
-        return new Ast.Method(methodName, parameters, new ArrayList<>(), returnType, bodyStatements);
+        List<Ast.Stmt> bodyStatements = parseBlock(false);
+        consume(SymbolTable.END, "Expected 'END' to close the method.");
+        return number(new Ast.Method(methodName, parameters, new ArrayList<>(), returnType, bodyStatements));
     }
 
 //    public Ast.Stmt parseStatement() throws ParseException {
@@ -270,25 +684,22 @@ public Ast.Field parseField() {
 //        throw error(peek(), "Unexpected statement.");
 //    }
 public Ast.Stmt parseStatement() throws ParseException {
-    if (matchLet("LET")) {
-        return parseDeclarationStatement();
-    }
-    if (matchReturn("RETURN")) {
-        return parseReturnStatement();
-    }
-    if (matchcondition("IF")) {
-        return parseIfStatement();
-    }
-    if (matchFor("FOR")) {
-        return parseFORStatement();
-    }
-    if (matchWhile("WHILE")) {
-        return parseWHILEStatement();
+    switch (peekSymbol()) {
+        case SymbolTable.LET:
+            return parseDeclarationStatement();
+        case SymbolTable.RETURN:
+            return parseReturnStatement();
+        case SymbolTable.IF:
+            return parseIfStatement();
+        case SymbolTable.FOR:
+            return parseFORStatement();
+        case SymbolTable.WHILE:
+            return parseWHILEStatement();
     }
     if (matchType(Token.Type.IDENTIFIER)) {
         // First parse the expression (which could be a simple identifier or field access)
-        Token start = previous();
-        Ast.Expr expr = parseAccessExpression(start.getLiteral());
+        String start = previousLiteral();
+        Ast.Expr expr = parseAccessExpression(start);
 //else if (matchOperator("(")) {
 //                List<Ast.Expr> arguments = parseArguments();
 //                consume(Token.Type.OPERATOR, ";", "Expected ';' after function call.");
@@ -300,86 +711,182 @@ public Ast.Stmt parseStatement() throws ParseException {
         if (matchOperator("=")) {
             Ast.Expr value = parseExpression();
             consume(Token.Type.OPERATOR, ";", "Expected ';' after assignment.");
-            return new Ast.Stmt.Assignment(expr, value);
+            return number(new Ast.Stmt.Assignment(expr, value));
         } else if (expr instanceof Ast.Expr.Function) {
             consume(Token.Type.OPERATOR, ";", "Expected ';' after function call.");
-            return new Ast.Stmt.Expression(expr);
+            return number(new Ast.Stmt.Expression(expr));
         }
         if (matchOperator("(")) {
                 List<Ast.Expr> arguments = parseArguments();
                 consume(Token.Type.OPERATOR, ";", "Expected ';' after function call.");
-                return new Ast.Stmt.Expression(
-                        new Ast.Expr.Function(Optional.empty(), start.getLiteral(), arguments)
-                );
+                return number(new Ast.Stmt.Expression(
+                        number(new Ast.Expr.Function(Optional.empty(), start, arguments))
+                ));
             }
 
         else {
             consume(Token.Type.OPERATOR, ";", "Expected ';' after expression.");
-            return new Ast.Stmt.Expression(expr);
+            return number(new Ast.Stmt.Expression(expr));
         }
     }
-    throw error(peek(), "Unexpected statement.");
+    throw error("Unexpected statement.");
 }
     public Ast.Expr parseExpression() throws ParseException {
-        return parseLogicalExpression();
+        return parseBinaryExpression();
     }
 
     public Ast.Expr parseLogicalExpression() throws ParseException {
-        return parseOrExpression();
+        return parseExpression();
     }
 
-    private Ast.Expr parseOrExpression() throws ParseException {
-        Ast.Expr expr = parseAndExpression();
-        while (matchLogicalOperator("OR")) {
-            String operator = previous().getLiteral();
-            Ast.Expr right = parseAndExpression();
-            expr = new Ast.Expr.Binary(operator, expr, right);
+    /**
+     * Parses an expression without recursion, so neither long operator
+     * chains nor deeply nested groups and calls are limited by the thread's
+     * stack.
+     *
+     * Operands and operators are kept on explicit stacks, and an operator is
+     * reduced once one binding no more tightly follows it, which builds the
+     * same left associative trees as precedence climbing. Each group,
+     * argument list, or expression nested after {@code AND}/{@code OR} in
+     * primary position opens a {@link Frame}, which is closed when the
+     * expression inside it ends.
+     */
+    private Ast.Expr parseBinaryExpression() throws ParseException {
+        operands.clear();
+        operatorCount = 0;
+        Frame frame = new Frame(null, Frame.ROOT, Optional.empty(), null);
+        parse:
+        while (true) {
+            Ast.Expr expr;
+            if (matchType(Token.Type.IDENTIFIER)) {
+                String identifier = previousLiteral();
+                switch (tokens.getSymbol(current - 1)) {
+                    case SymbolTable.AND:
+                    case SymbolTable.OR:
+                        frame = new Frame(frame, Frame.NESTED, Optional.empty(), null);
+                        continue parse;
+                    case SymbolTable.NIL:
+                        expr = number(new Ast.Expr.Literal(null));
+                        break;
+                    case SymbolTable.TRUE:
+                        expr = number(new Ast.Expr.Literal(true));
+                        break;
+                    case SymbolTable.FALSE:
+                        expr = number(new Ast.Expr.Literal(false));
+                        break;
+                    default:
+                        if (!matchOperator("(")) {
+                            expr = number(new Ast.Expr.Access(Optional.empty(), identifier));
+                        } else if (!check(Token.Type.OPERATOR, ")")) {
+                            frame = new Frame(frame, Frame.CALL, Optional.empty(), identifier);
+                            continue parse;
+                        } else {
+                            advance();
+                            expr = number(new Ast.Expr.Function(Optional.empty(), identifier, new ArrayList<>()));
+                        }
+                }
+            } else if (matchOperator("(")) {
+                frame = new Frame(frame, Frame.GROUP, Optional.empty(), null);
+                continue;
+            } else {
+                expr = parseLiteralExpression();
+            }
+            while (true) {
+                while (matchOperator(".")) {
+                    String identifier = consume(Token.Type.IDENTIFIER, "Expected identifier after '.'.");
+                    if (!matchOperator("(")) {
+                        expr = number(new Ast.Expr.Access(Optional.of(expr), identifier));
+                    } else if (!check(Token.Type.OPERATOR, ")")) {
+                        frame = new Frame(frame, Frame.CALL, Optional.of(expr), identifier);
+                        continue parse;
+                    } else {
+                        advance();
+                        expr = number(new Ast.Expr.Function(Optional.of(expr), identifier, new ArrayList<>()));
+                    }
+                }
+                operands.add(expr);
+                int operator = peekOperator();
+                if (operator != -1) {
+                    reduce(frame, POWERS[operator]);
+                    pushOperator(operator);
+                    current++;
+                    continue parse;
+                }
+                reduce(frame, 0);
+                expr = operands.remove(operands.size() - 1);
+                switch (frame.kind) {
+                    case Frame.ROOT:
+                        return expr;
+                    case Frame.GROUP:
+                        if (!matchOperator(")")) {
+                            throw error("Expected expression.");
+                        }
+                        expr = number(new Ast.Expr.Group(expr));
+                        break;
+                    case Frame.CALL:
+                        frame.arguments.add(expr);
+                        if (matchOperator(",")) {
+                            continue parse;
+                        }
+                        consume(Token.Type.OPERATOR, ")", "Expected ')' after arguments.");
+                        expr = number(new Ast.Expr.Function(frame.receiver, frame.name, frame.arguments));
+                        break;
+                }
+                frame = frame.parent;
+            }
         }
-        return expr;
     }
 
-    private Ast.Expr parseAndExpression() throws ParseException {
-        Ast.Expr expr = parseComparisonExpression();
-        while (matchLogicalOperator("AND")) {
-            String operator = previous().getLiteral();
-            Ast.Expr right = parseComparisonExpression();
-            expr = new Ast.Expr.Binary(operator, expr, right);
+    /**
+     * Pops operators of the frame binding at least as tightly as the given
+     * power, combining the top two operands for each.
+     */
+    private void reduce(Frame frame, int power) {
+        while (operatorCount > frame.operators && POWERS[operators[operatorCount - 1]] >= power) {
+            int operator = operators[--operatorCount];
+            Ast.Expr right = operands.remove(operands.size() - 1);
+            Ast.Expr left = operands.remove(operands.size() - 1);
+            operands.add(number(new Ast.Expr.Binary(OPERATORS[operator], left, right)));
         }
-        return expr;
     }
 
-    private boolean matchLogicalOperator(String... literals) {
-        for (String literal : literals) {
-            if ((check(Token.Type.OPERATOR, literal) || check(Token.Type.IDENTIFIER, literal))) {
-                advance();
-                return true;
-            }
+    private void pushOperator(int operator) {
+        if (operatorCount == operators.length) {
+            operators = Arrays.copyOf(operators, operatorCount * 2);
         }
-        return false;
+        operators[operatorCount++] = operator;
     }
 
-    private Ast.Expr parseComparisonExpression() throws ParseException {
-        Ast.Expr expr = parseAdditiveExpression();
-        while (matchOperator("<", ">", "<=", ">=", "==", "!=")) {
-            String operator = previous().getLiteral();
-            Ast.Expr right = parseAdditiveExpression();
-            expr = new Ast.Expr.Binary(operator, expr, right);
+    /**
+     * Returns the index in {@link #OPERATORS} of the current token, or -1 if
+     * it is not a binary operator.
+     */
+    private int peekOperator() {
+        if (isAtEnd()) {
+            return -1;
         }
-        return expr;
-    }
-
-    private Ast.Expr parseAdditiveExpression() throws ParseException {
-        Ast.Expr expr = parseMultiplicativeExpression();
-        while (matchOperator("+", "-")) {
-            String operator = previous().getLiteral();
-            Ast.Expr right = parseMultiplicativeExpression();
-            expr = new Ast.Expr.Binary(operator, expr, right);
+        switch (tokens.getType(current)) {
+            case IDENTIFIER:
+                int symbol = tokens.getSymbol(current);
+                return symbol < KEYWORD_OPERATORS.length ? KEYWORD_OPERATORS[symbol] : -1;
+            case OPERATOR:
+                char first = tokens.charAt(current, 0);
+                if (first >= 128) {
+                    return -1;
+                }
+                int length = tokens.getLength(current);
+                if (length == 1) {
+                    return SINGLE_OPERATORS[first];
+                }
+                return length == 2 && tokens.charAt(current, 1) == '=' ? EQUALS_OPERATORS[first] : -1;
+            default:
+                return -1;
         }
-        return expr;
     }
+
     public Ast.Method parseMethod() {
         advance(); // consume DEF
-        String name = consume(Token.Type.IDENTIFIER, "Expected method name").getLiteral();
+        String name = consume(Token.Type.IDENTIFIER, "Expected method name");
 
         // Parse parameters
         consume(Token.Type.OPERATOR, "(", "Expected '(' after method name");
@@ -388,10 +895,10 @@ public Ast.Stmt parseStatement() throws ParseException {
 
         if (!check(Token.Type.OPERATOR, ")")) {
             do {
-                parameters.add(consume(Token.Type.IDENTIFIER, "Expected parameter name").getLiteral());
+                parameters.add(consume(Token.Type.IDENTIFIER, "Expected parameter name"));
                 // Handle parameter type
                 consume(Token.Type.OPERATOR, ":", "Expected ':' after parameter name");
-                parameterTypes.add(consume(Token.Type.IDENTIFIER, "Expected parameter type").getLiteral());
+                parameterTypes.add(consume(Token.Type.IDENTIFIER, "Expected parameter type"));
             } while (matchOperator(","));
         }
         consume(Token.Type.OPERATOR, ")", "Expected ')' after parameters");
@@ -399,44 +906,21 @@ public Ast.Stmt parseStatement() throws ParseException {
         // Parse return type
         Optional<String> returnType = Optional.empty();
         if (matchOperator(":")) {
-            returnType = Optional.of(consume(Token.Type.IDENTIFIER, "Expected return type").getLiteral());
+            returnType = Optional.of(consume(Token.Type.IDENTIFIER, "Expected return type"));
         }
 
         // Parse method body
-        consume(Token.Type.IDENTIFIER, "DO", "Expected 'DO' after method header");
+        consume(SymbolTable.DO, "Expected 'DO' after method header");
 
         List<Ast.Stmt> statements = new ArrayList<>();
-        while (!check(Token.Type.IDENTIFIER, "END")) {
+        while (!check(SymbolTable.END)) {
             statements.add(parseStatement());
         }
 
-        consume(Token.Type.IDENTIFIER, "END", "Expected 'END' to close method");
+        consume(SymbolTable.END, "Expected 'END' to close method");
 
-        return new Ast.Method(name, parameters, parameterTypes, returnType, statements);
-    }
-    private Ast.Expr parseMultiplicativeExpression() throws ParseException {
-        Ast.Expr expr = parseSecondaryExpression();
-        while (matchOperator("*", "/")) {
-            String operator = previous().getLiteral();
-            Ast.Expr right = parseSecondaryExpression();
-            expr = new Ast.Expr.Binary(operator, expr, right);
-        }
-        return expr;
-    }
-
-    private Ast.Expr parseSecondaryExpression() throws ParseException {
-        Ast.Expr expr = parsePrimaryExpression();
-        while (matchOperator(".")) {
-            Token identifier = consume(Token.Type.IDENTIFIER, "Expected identifier after '.'.");
-            if (matchOperator("(")) {
-                expr = new Ast.Expr.Function(Optional.of(expr), identifier.getLiteral(), parseArguments());
-            } else {
-                expr = new Ast.Expr.Access(Optional.of(expr), identifier.getLiteral());
-            }
-        }
-        return expr;
+        return number(new Ast.Method(name, parameters, parameterTypes, returnType, statements));
     }
-
     private Ast.Expr parseGroupExpression() throws ParseException {
         // Expect and consume opening parenthesis
         consume(Token.Type.OPERATOR, "(", "Expected opening parenthesis.");
@@ -448,71 +932,44 @@ public Ast.Stmt parseStatement() throws ParseException {
         consume(Token.Type.OPERATOR, ")", "Expected closing parenthesis.");
 
         // Create and return the group expression
-        return new Ast.Expr.Group(expression);
+        return number(new Ast.Expr.Group(expression));
     }
 
     private Ast.Expr parseAccessExpression(String identifier) throws ParseException {
-        Ast.Expr expr = new Ast.Expr.Access(Optional.empty(), identifier);
+        Ast.Expr expr = number(new Ast.Expr.Access(Optional.empty(), identifier));
 
         while (matchOperator(".")) {
             // Get the field/method name
-            Token field = consume(Token.Type.IDENTIFIER, "Expected field name after '.'");
+            String field = consume(Token.Type.IDENTIFIER, "Expected field name after '.'");
 
             if (matchOperator("(")) {
                 // Method call
                 List<Ast.Expr> arguments = parseArguments();
-                expr = new Ast.Expr.Function(Optional.of(expr), field.getLiteral(), arguments);
+                expr = number(new Ast.Expr.Function(Optional.of(expr), field, arguments));
             } else {
                 // Field access
-                expr = new Ast.Expr.Access(Optional.of(expr), field.getLiteral());
+                expr = number(new Ast.Expr.Access(Optional.of(expr), field));
             }
         }
 
         return expr;
     }
-    private Ast.Expr parsePrimaryExpression() throws ParseException {
-        if (matchType(Token.Type.IDENTIFIER)) {
-            String identifier = previous().getLiteral();
-            if (identifier.equals("NIL")) {
-                return new Ast.Expr.Literal(null);
-            }
-            else if (identifier.equals("AND") || identifier.equals("OR")) {
-                return parseLogicalExpression();
-            }
-           else  if (identifier.equals("TRUE") || identifier.equals("FALSE")) {
-                return new Ast.Expr.Literal(Boolean.parseBoolean(identifier));
-            }
-          else  if (matchOperator("(")) {
-                return new Ast.Expr.Function(Optional.empty(), identifier, parseArguments());
-            }
-//          else if (matchOperator(".")) {
-//              return parseAccessExpression();
-//            }
-            return new Ast.Expr.Access(Optional.empty(), identifier);
-        }
+    private Ast.Expr parseLiteralExpression() throws ParseException {
         if (matchType(Token.Type.INTEGER)) {
-            return new Ast.Expr.Literal(new BigInteger(previous().getLiteral()));
+            return number(new Ast.Expr.Literal(new BigInteger(previousLiteral())));
         }
         if (matchType(Token.Type.DECIMAL)) {
-            return new Ast.Expr.Literal(new BigDecimal(previous().getLiteral()));
+            return number(new Ast.Expr.Literal(new BigDecimal(previousLiteral())));
         }
         if (matchType(Token.Type.CHARACTER)) {
-            return new Ast.Expr.Literal(previous().getLiteral().charAt(1));
+            return number(new Ast.Expr.Literal(previousLiteral().charAt(1)));
         }
         if (matchType(Token.Type.STRING)) {
-            String literal = previous().getLiteral();
+            String literal = previousLiteral();
             literal = literal.substring(1, literal.length() - 1).replace("\\n", "\n");
-            return new Ast.Expr.Literal(literal);
+            return number(new Ast.Expr.Literal(literal));
         }
-        if (matchOperator("(")) { // Match opening parenthesis
-            Ast.Expr expression = parseExpression(); // Parse the inner expression
-            if (!matchOperator(")")) { // Check for and consume closing parenthesis
-                throw error(peek(), "Expected expression.");
-//                throw error("Expected ')' after expression.");
-            }
-            return new Ast.Expr.Group(expression); // Return the group expression
-        }
-        throw error(peek(), "Expected expression.");
+        throw error("Expected expression.");
     }
 
     private List<Ast.Expr> parseArguments() throws ParseException {
@@ -526,14 +983,19 @@ public Ast.Stmt parseStatement() throws ParseException {
         return arguments;
     }
 
-    private Token consume(Token.Type type, String literal, String message) throws ParseException {
+    private String consume(Token.Type type, String literal, String message) throws ParseException {
         if (check(type, literal)) return advance();
-        throw error(peek(), message);
+        throw error(message);
     }
 
-    private Token consume(Token.Type type, String message) throws ParseException {
+    private String consume(Token.Type type, String message) throws ParseException {
         if (check(type)) return advance();
-        throw error(peek(), message);
+        throw error(message);
+    }
+
+    private String consume(int symbol, String message) throws ParseException {
+        if (check(symbol)) return advance();
+        throw error(message);
     }
 
     private boolean matchType(Token.Type... types) {
@@ -558,101 +1020,247 @@ public Ast.Stmt parseStatement() throws ParseException {
         return false;
     }
 
-    private boolean matchloop() {
-        if (check(Token.Type.IDENTIFIER, "FOR") || check(Token.Type.IDENTIFIER, "WHILE")) {
+    private boolean check(Token.Type type, String literal) {
+        return !isAtEnd() && tokens.getType(current) == type && tokens.literalEquals(current, literal);
+    }
+
+    private boolean check(Token.Type type) {
+        return !isAtEnd() && tokens.getType(current) == type;
+    }
+
+    /**
+     * Checks for a keyword (or other interned identifier) by its symbol id,
+     * which avoids comparing the literal.
+     */
+    private boolean check(int symbol) {
+        return peekSymbol() == symbol;
+    }
+
+    private boolean match(int symbol) {
+        if (check(symbol)) {
             advance();
             return true;
         }
         return false;
     }
 
-    private boolean matchcondition(String... literals) {
-        if (check(Token.Type.IDENTIFIER, "IF")) {
-            return true;
-        }
-        return false;
+    private int peekSymbol() {
+        return isAtEnd() ? SymbolTable.NONE : tokens.getSymbol(current);
     }
 
-    private boolean matchReturn(String... literals) {
-        if (check(Token.Type.IDENTIFIER, "RETURN")) {
-            return true;
-        }
-        return false;
+    private String advance() {
+        if (!isAtEnd()) current++;
+        return previousLiteral();
     }
 
-    private boolean matchLet(String... literals) {
-        if (check(Token.Type.IDENTIFIER, "LET")) {
-            return true;
-        }
-        return false;
+    private boolean isAtEnd() {
+        return current >= end;
     }
 
-    private boolean matchFor(String... literals) {
-        if (check(Token.Type.IDENTIFIER, "FOR")) {
-            return true;
+    private String peekLiteral() {
+        if (isAtEnd()) {
+            return null;
         }
-        return false;
+        return tokens.getLiteral(current);
     }
 
-    private boolean matchDEF(String... literals) {
-        if (check(Token.Type.IDENTIFIER, "DEF")) {
-            return true;
-        }
-        return false;
+    private String previousLiteral() {
+        return tokens.getLiteral(current - 1);
     }
 
-    private boolean matchWhile(String... literals) {
-        if (check(Token.Type.IDENTIFIER, "WHILE")) {
-            return true;
+    /**
+     * Creates an exception at the index of the current token, or just past the
+     * end of the last token if all tokens have been consumed.
+     */
+    private ParseException error(String message) {
+        if (!isAtEnd()) {
+            return new ParseException(message, tokens.getIndex(current));
+        } else if (end == 0) {
+            return new ParseException(message, 0);
         }
-        return false;
+        int last = end - 1;
+        return new ParseException(message, tokens.getIndex(last) + tokens.getLength(last));
     }
 
-    private boolean matchassignment(String... literals) {
-        if (check(Token.Type.IDENTIFIER, "LET")) {
-            advance();
-            return true;
+    /**
+     * A subscription to {@link #publishSource(Executor)}, which parses units
+     * on the executor whenever there is demand for them.
+     *
+     * Requests and cancellation only update the state and schedule a drain
+     * if none is pending. The number of signals since the last drain started
+     * is counted in {@code pending}, so exactly one drain runs at a time (even
+     * if the subscriber requests more from {@code onNext}) and it keeps going
+     * until no signal arrived while it was running.
+     */
+    private static final class SourceSubscription implements Flow.Subscription {
+
+        private final Parser parser;
+        private final Flow.Subscriber<? super Ast> subscriber;
+        private final Executor executor;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean cancelled = false;
+        private volatile RuntimeException error = null;
+        private boolean done = false;
+
+        SourceSubscription(Parser parser, Flow.Subscriber<? super Ast> subscriber, Executor executor) {
+            this.parser = parser;
+            this.subscriber = subscriber;
+            this.executor = executor;
         }
-        return false;
-    }
 
-    private boolean matchfunctionDef(String... literals) {
-        if (check(Token.Type.IDENTIFIER, "DEF")) {
-            advance();
-            return true;
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Requested " + n + " units, which is not positive.");
+            } else {
+                demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            schedule();
         }
-        return false;
-    }
 
-    private boolean check(Token.Type type, String literal) {
-        return !isAtEnd() && peek().getType() == type && peek().getLiteral().equals(literal);
-    }
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
 
-    private boolean check(Token.Type type) {
-        return !isAtEnd() && peek().getType() == type;
-    }
+        private void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
 
-    private Token advance() {
-        if (!isAtEnd()) current++;
-        return previous();
-    }
+        /**
+         * Emits units while there is demand, until the source is exhausted,
+         * it fails to parse or the subscription is cancelled.
+         */
+        private void drain() {
+            int signals = 1;
+            do {
+                while (!done) {
+                    if (cancelled) {
+                        done = true;
+                    } else if (error != null) {
+                        done = true;
+                        subscriber.onError(error);
+                    } else if (demand.get() == 0) {
+                        break;
+                    } else {
+                        emit();
+                    }
+                }
+                signals = pending.addAndGet(-signals);
+            } while (signals != 0);
+        }
+
+        private void emit() {
+            Ast unit;
+            try {
+                unit = parser.isAtEnd() ? null : parser.parseUnit(false);
+            } catch (RuntimeException e) {
+                done = true;
+                subscriber.onError(e);
+                return;
+            }
+            if (unit == null) {
+                done = true;
+                subscriber.onComplete();
+                return;
+            }
+            demand.decrementAndGet();
+            try {
+                subscriber.onNext(unit);
+            } catch (RuntimeException | Error e) {
+                done = true;
+                cancelled = true;
+                throw e;
+            }
+        }
 
-    private boolean isAtEnd() {
-        return current >= tokens.size();
     }
 
-    private Token peek() {
-        if (isAtEnd()) {
-            return null;
+    /**
+     * The statements of a method body parsed by {@link #parseSourceLazy()},
+     * which are parsed from the tokens between its {@code DO} and the
+     * matching {@code END} on first access. If the body is invalid every
+     * access throws the {@link ParseException}.
+     */
+    private static final class LazyStatements extends AbstractList<Ast.Stmt> {
+
+        private final TokenBuffer tokens;
+        private final int from;
+        private final int close;
+        private List<Ast.Stmt> statements;
+
+        LazyStatements(TokenBuffer tokens, int from, int close) {
+            this.tokens = tokens;
+            this.from = from;
+            this.close = close;
+        }
+
+        @Override
+        public Ast.Stmt get(int index) {
+            return statements().get(index);
+        }
+
+        @Override
+        public int size() {
+            return statements().size();
+        }
+
+        /**
+         * Parses the body if it has not been yet. The statements must end
+         * exactly at the matching {@code END}, and an earlier {@code END}
+         * (such as one an inner statement did not consume) is reported at
+         * the token after it, where the eager parser reports it.
+         */
+        private synchronized List<Ast.Stmt> statements() {
+            if (statements == null) {
+                Parser parser = new Parser(tokens, from, close + 1);
+                List<Ast.Stmt> statements = new ArrayList<>();
+                while (!parser.check(SymbolTable.END)) {
+                    statements.add(parser.parseStatement());
+                }
+                if (parser.current != close) {
+                    parser.advance();
+                    throw parser.error("Unexpected statement.");
+                }
+                this.statements = statements;
+            }
+            return statements;
         }
-        return tokens.get(current);
-    }
 
-    private Token previous() {
-        return tokens.get(current - 1);
     }
 
-    private ParseException error(Token token, String message) {
-        return new ParseException(message, token.getIndex());
+    /**
+     * An expression nested inside another, along with the state needed to
+     * finish the enclosing construct once it ends. Operators below the size
+     * of the operator stack when the frame was opened belong to its parents.
+     */
+    private final class Frame {
+
+        static final int ROOT = 0;
+        static final int GROUP = 1;
+        static final int CALL = 2;
+        static final int NESTED = 3;
+
+        final Frame parent;
+        final int kind;
+        final int operators;
+        final Optional<Ast.Expr> receiver;
+        final String name;
+        final List<Ast.Expr> arguments;
+
+        Frame(Frame parent, int kind, Optional<Ast.Expr> receiver, String name) {
+            this.parent = parent;
+            this.kind = kind;
+            this.operators = operatorCount;
+            this.receiver = receiver;
+            this.name = name;
+            this.arguments = kind == CALL ? new ArrayList<>() : null;
+        }
+
     }
+
 }
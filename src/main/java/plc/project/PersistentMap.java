@@ -0,0 +1,215 @@
+package plc.project;
+
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable hash map where {@link #put} returns a new map sharing all but
+ * the changed path with the old one, implemented as a hash array mapped trie.
+ * Each level of the trie uses five bits of the key's hash to pick one of up to
+ * 32 children, which are stored compactly using a bitmap of the present ones.
+ * Keys with equal hashes are kept together in a collision node.
+ */
+final class PersistentMap<K, V> {
+
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(K key) {
+        return root == null ? null : (V) root.get(key, hash(key), 0);
+    }
+
+    PersistentMap<K, V> put(K key, V value) {
+        boolean[] added = new boolean[1];
+        Node node = (root == null ? BitmapNode.EMPTY : root).put(key, hash(key), value, 0, added);
+        return node == root ? this : new PersistentMap<>(node, added[0] ? size + 1 : size);
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null) {
+            root.forEach((BiConsumer<Object, Object>) action);
+        }
+    }
+
+    private static int hash(Object key) {
+        int hash = key.hashCode();
+        return hash ^ hash >>> 16;
+    }
+
+    private interface Node {
+
+        Object get(Object key, int hash, int shift);
+
+        /**
+         * Returns a node with the key set to the value, which is this node if
+         * it already was, and sets {@code added[0]} if the key was new.
+         */
+        Node put(Object key, int hash, Object value, int shift, boolean[] added);
+
+        void forEach(BiConsumer<Object, Object> action);
+
+    }
+
+    /**
+     * A node with an entry for each bit set in the bitmap, in order. Each
+     * entry is a key and its value, or null and the child node for keys with
+     * the same five bits at this level.
+     */
+    private static final class BitmapNode implements Node {
+
+        private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] array;
+
+        private BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        @Override
+        public Object get(Object key, int hash, int shift) {
+            int bit = 1 << (hash >>> shift & 31);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int index = 2 * Integer.bitCount(bitmap & bit - 1);
+            Object k = array[index];
+            if (k == null) {
+                return ((Node) array[index + 1]).get(key, hash, shift + 5);
+            }
+            return key.equals(k) ? array[index + 1] : null;
+        }
+
+        @Override
+        public Node put(Object key, int hash, Object value, int shift, boolean[] added) {
+            int bit = 1 << (hash >>> shift & 31);
+            int index = 2 * Integer.bitCount(bitmap & bit - 1);
+            if ((bitmap & bit) == 0) {
+                Object[] copy = new Object[array.length + 2];
+                System.arraycopy(array, 0, copy, 0, index);
+                copy[index] = key;
+                copy[index + 1] = value;
+                System.arraycopy(array, index, copy, index + 2, array.length - index);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, copy);
+            }
+            Object k = array[index];
+            Object v = array[index + 1];
+            if (k == null) {
+                Node child = ((Node) v).put(key, hash, value, shift + 5, added);
+                return child == v ? this : with(index, null, child);
+            } else if (key.equals(k)) {
+                return v == value ? this : with(index, k, value);
+            }
+            added[0] = true;
+            return with(index, null, pair(k, hash(k), v, key, hash, value, shift + 5));
+        }
+
+        @Override
+        public void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).forEach(action);
+                } else {
+                    action.accept(array[i], array[i + 1]);
+                }
+            }
+        }
+
+        private BitmapNode with(int index, Object key, Object value) {
+            Object[] copy = array.clone();
+            copy[index] = key;
+            copy[index + 1] = value;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        /**
+         * Creates a node holding two different keys at the given level. Keys
+         * with different hashes always differ in the bits of some level, so
+         * the shift never passes the last level before they are separated.
+         */
+        private static Node pair(Object key1, int hash1, Object value1, Object key2, int hash2, Object value2, int shift) {
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[] {key1, value1, key2, value2});
+            }
+            boolean[] added = new boolean[1];
+            return EMPTY.put(key1, hash1, value1, shift, added).put(key2, hash2, value2, shift, added);
+        }
+
+    }
+
+    /**
+     * A node for keys whose hashes are all equal, searched linearly.
+     */
+    private static final class CollisionNode implements Node {
+
+        private final int hash;
+        private final Object[] array;
+
+        private CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        public Object get(Object key, int hash, int shift) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return array[i + 1];
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Node put(Object key, int hash, Object value, int shift, boolean[] added) {
+            if (hash != this.hash) {
+                BitmapNode node = new BitmapNode(1 << (this.hash >>> shift & 31), new Object[] {null, this});
+                return node.put(key, hash, value, shift, added);
+            }
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    if (array[i + 1] == value) {
+                        return this;
+                    }
+                    Object[] copy = array.clone();
+                    copy[i + 1] = value;
+                    return new CollisionNode(hash, copy);
+                }
+            }
+            Object[] copy = new Object[array.length + 2];
+            System.arraycopy(array, 0, copy, 0, array.length);
+            copy[array.length] = key;
+            copy[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override
+        public void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                action.accept(array[i], array[i + 1]);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,117 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * An immutable scope, where defining a variable or function returns a new
+ * scope sharing everything else with this one. A fully loaded global scope can
+ * be built once and shared by any number of threads, each forking it into a
+ * mutable {@link Scope} with {@link #fork()} in constant time and without
+ * locking.
+ *
+ * Variables are mutable, so a fork copies a variable of this scope the first
+ * time it is looked up, and assignments in one fork are not seen by others.
+ * Looking a variable up here returns a copy as well. The values themselves
+ * are shared, as are the functions, so a value with fields is the same object
+ * in every fork and setting one of its fields is seen by all of them.
+ */
+public final class PersistentScope {
+
+    public static final PersistentScope EMPTY = new PersistentScope(PersistentMap.empty(), PersistentMap.empty());
+
+    private final PersistentMap<String, Environment.Variable> variables;
+    private final PersistentMap<String, Environment.Function[]> functions;
+
+    private PersistentScope(PersistentMap<String, Environment.Variable> variables, PersistentMap<String, Environment.Function[]> functions) {
+        this.variables = variables;
+        this.functions = functions;
+    }
+
+    /**
+     * Returns a new mutable scope whose lookups fall back to this one.
+     */
+    public Scope fork() {
+        return new Scope(null, this);
+    }
+
+    public PersistentScope defineVariable(String name, Environment.PlcObject value) {
+        return defineVariable(name, name, Environment.Type.ANY, value);
+    }
+
+    public PersistentScope defineVariable(String name, String jvmName, Environment.Type type, Environment.PlcObject value) {
+        if (variables.get(name) != null) {
+            throw new RuntimeException("The variable " + name + " is already defined in this scope.");
+        }
+        return new PersistentScope(variables.put(name, new Environment.Variable(name, jvmName, type, value)), functions);
+    }
+
+    public PersistentScope defineFunction(String name, int arity, Function<List<Environment.PlcObject>, Environment.PlcObject> function) {
+        List<Environment.Type> parameterTypes = new ArrayList<>();
+        for (int i = 0; i < arity; i++) {
+            parameterTypes.add(Environment.Type.ANY);
+        }
+        return defineFunction(name, name, parameterTypes, Environment.Type.ANY, function);
+    }
+
+    public PersistentScope defineFunction(String name, String jvmName, List<Environment.Type> parameterTypes, Environment.Type returnType, Function<List<Environment.PlcObject>, Environment.PlcObject> function) {
+        int arity = parameterTypes.size();
+        Environment.Function[] overloads = functions.get(name);
+        if (overloads != null && arity < overloads.length && overloads[arity] != null) {
+            throw new RuntimeException("The function " + name + "/" + arity + " is already defined in this scope.");
+        }
+        overloads = overloads == null ? new Environment.Function[arity + 1] : Arrays.copyOf(overloads, Math.max(arity + 1, overloads.length));
+        overloads[arity] = new Environment.Function(name, jvmName, parameterTypes, returnType, function);
+        return new PersistentScope(variables, functions.put(name, overloads));
+    }
+
+    /**
+     * Returns a copy of a variable, so setting its value does not change
+     * this scope.
+     */
+    public Environment.Variable lookupVariable(String name) {
+        Environment.Variable variable = variables.get(name);
+        if (variable == null) {
+            throw new RuntimeException("The variable " + name + " is not defined in this scope.");
+        }
+        return new Environment.Variable(variable.getName(), variable.getJvmName(), variable.getType(), variable.getValue());
+    }
+
+    public Environment.Function lookupFunction(String name, int arity) {
+        Environment.Function function = findFunction(name, arity);
+        if (function == null) {
+            throw new RuntimeException("The function " + name + "/" + arity + " is not defined in this scope.");
+        }
+        return function;
+    }
+
+    Environment.Variable findVariable(String name) {
+        return variables.get(name);
+    }
+
+    Environment.Function findFunction(String name, int arity) {
+        Environment.Function[] overloads = functions.get(name);
+        return overloads != null && arity < overloads.length ? overloads[arity] : null;
+    }
+
+    @Override
+    public String toString() {
+        List<String> keys = new ArrayList<>();
+        functions.forEach((name, overloads) -> {
+            for (int arity = 0; arity < overloads.length; arity++) {
+                if (overloads[arity] != null) {
+                    keys.add(name + "/" + arity);
+                }
+            }
+        });
+        List<String> names = new ArrayList<>();
+        variables.forEach((name, variable) -> names.add(name));
+        return "PersistentScope{" +
+                "variables=" + names +
+                ", functions=" + keys +
+                '}';
+    }
+
+}
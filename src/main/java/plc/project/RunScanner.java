@@ -0,0 +1,113 @@
+package plc.project;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds the end of a run of whitespace, identifier or digit characters, which
+ * make up most of a typical source. Runs only ever contain ASCII characters,
+ * so the same kinds apply to chars and to UTF-8 bytes.
+ *
+ * The default implementation checks one character at a time. If the build
+ * includes {@code VectorRunScanner} (by building with {@code -Pvector}) and the
+ * {@code jdk.incubator.vector} module is available (by running with
+ * {@code --add-modules jdk.incubator.vector}) it is used instead, which can be
+ * turned off with {@code -Dplc.lexer.vector=false} or at runtime through
+ * {@link Lexer#setVectorized(boolean)}.
+ */
+class RunScanner {
+
+    static final int WHITESPACE = 1;
+    static final int IDENTIFIER = 2;
+    static final int DIGIT = 4;
+
+    /**
+     * The kinds of run each ASCII character can continue, as bit flags.
+     */
+    private static final byte[] KINDS = new byte[128];
+
+    static {
+        for (char c = 'A'; c <= 'Z'; c++) {
+            KINDS[c] = IDENTIFIER;
+            KINDS[c + ('a' - 'A')] = IDENTIFIER;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            KINDS[c] = IDENTIFIER | DIGIT;
+        }
+        KINDS['_'] = IDENTIFIER;
+        KINDS['-'] = IDENTIFIER;
+        for (char c : " \b\t\n\r".toCharArray()) {
+            KINDS[c] = WHITESPACE;
+        }
+    }
+
+    private static final RunScanner SCALAR = new RunScanner();
+    private static final RunScanner VECTOR = loadVector();
+
+    private static volatile RunScanner current =
+            VECTOR != null && Boolean.parseBoolean(System.getProperty("plc.lexer.vector", "true")) ? VECTOR : SCALAR;
+
+    static RunScanner get() {
+        return current;
+    }
+
+    static boolean isVectorAvailable() {
+        return VECTOR != null;
+    }
+
+    static boolean isVectorized() {
+        return current == VECTOR;
+    }
+
+    /**
+     * Selects the scanner used by lexers created afterwards, falling back to
+     * the scalar scanner if the vector module is not available.
+     */
+    static void setVectorized(boolean vectorized) {
+        current = vectorized && VECTOR != null ? VECTOR : SCALAR;
+    }
+
+    /**
+     * Loads the vector scanner reflectively, so this class never links against
+     * the incubator module unless it is present, returning null if either the
+     * module or the scanner was left out.
+     */
+    private static RunScanner loadVector() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return (RunScanner) Class.forName("plc.project.VectorRunScanner").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    static boolean matches(int kind, int c) {
+        return c < 128 && (KINDS[c] & kind) != 0;
+    }
+
+    /**
+     * Returns the index of the first character in {@code [from, to)} which
+     * does not continue a run of the given kind, or {@code to}.
+     */
+    int scan(char[] chars, int from, int to, int kind) {
+        int i = from;
+        while (i < to && matches(kind, chars[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the position of the first byte in {@code [from, to)} which does
+     * not continue a run of the given kind, or {@code to}.
+     */
+    int scan(ByteBuffer bytes, int from, int to, int kind) {
+        int i = from;
+        while (i < to && matches(kind, bytes.get(i) & 0xFF)) {
+            i++;
+        }
+        return i;
+    }
+
+}
@@ -1,6 +1,7 @@
 package plc.project;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -9,11 +10,38 @@ import java.util.function.Function;
 public final class Scope {
 
     private final Scope parent;
+
+    /**
+     * The outermost scope of this scope's chain, which counts the functions
+     * defined anywhere below it. The count only changes when a lookup from
+     * the chain could return a different function (see {@link FrameLayout}),
+     * and is unaffected by definitions in unrelated chains.
+     */
+    private final Scope root;
+    private int definitions = 0;
+
+    /**
+     * The persistent scope this scope was forked from, which is searched
+     * after this scope's own definitions (see {@link PersistentScope#fork()}).
+     */
+    private final PersistentScope base;
+
     private final Map<String, Environment.Variable> variables = new HashMap<>();
-    private final Map<String, Environment.Function> functions = new HashMap<>();
+
+    /**
+     * The functions of this scope by name, each in an array indexed by arity
+     * so looking one up does not build a key.
+     */
+    private final Map<String, Environment.Function[]> functions = new HashMap<>();
 
     public Scope(Scope parent) {
+        this(parent, null);
+    }
+
+    Scope(Scope parent, PersistentScope base) {
         this.parent = parent;
+        this.root = parent != null ? parent.root : this;
+        this.base = base;
     }
 
     public Scope getParent() {
@@ -25,7 +53,7 @@ public final class Scope {
     }
 
     public Environment.Variable defineVariable(String name, String jvmName, Environment.Type type, Environment.PlcObject value) {
-        if (variables.containsKey(name)) {
+        if (variables.containsKey(name) || base != null && base.findVariable(name) != null) {
             throw new RuntimeException("The variable " + name + " is already defined in this scope.");
         } else {
             Environment.Variable variable = new Environment.Variable(name, jvmName, type, value);
@@ -35,8 +63,13 @@ public final class Scope {
     }
 
     public Environment.Variable lookupVariable(String name) {
-        if (variables.containsKey(name)) {
-            return variables.get(name);
+        Environment.Variable variable = variables.get(name);
+        if (variable != null) {
+            return variable;
+        } else if (base != null && (variable = base.findVariable(name)) != null) {
+            Environment.Variable copy = new Environment.Variable(variable.getName(), variable.getJvmName(), variable.getType(), variable.getValue());
+            variables.put(name, copy);
+            return copy;
         } else if (parent != null) {
             return parent.lookupVariable(name);
         } else {
@@ -53,18 +86,30 @@ public final class Scope {
     }
 
     public Environment.Function defineFunction(String name, String jvmName, List<Environment.Type> parameterTypes, Environment.Type returnType, java.util.function.Function<List<Environment.PlcObject>, Environment.PlcObject> function) {
-        if (functions.containsKey(name + "/" + parameterTypes.size())) {
-            throw new RuntimeException("The function " + name + "/" + parameterTypes.size() + " is already defined in this scope.");
+        int arity = parameterTypes.size();
+        Environment.Function[] overloads = functions.get(name);
+        if (overloads != null && arity < overloads.length && overloads[arity] != null || base != null && base.findFunction(name, arity) != null) {
+            throw new RuntimeException("The function " + name + "/" + arity + " is already defined in this scope.");
         } else {
+            if (overloads == null || arity >= overloads.length) {
+                overloads = overloads == null ? new Environment.Function[arity + 1] : Arrays.copyOf(overloads, arity + 1);
+                functions.put(name, overloads);
+            }
             Environment.Function func = new Environment.Function(name, jvmName, parameterTypes, returnType, function);
-            functions.put(func.getName() + "/" + func.getParameterTypes().size(), func);
+            overloads[arity] = func;
+            root.definitions++;
             return func;
         }
     }
 
     public Environment.Function lookupFunction(String name, int arity) {
-        if (functions.containsKey(name + "/" + arity)) {
-            return functions.get(name + "/" + arity);
+        Environment.Function[] overloads = functions.get(name);
+        if (overloads != null && arity < overloads.length && overloads[arity] != null) {
+            return overloads[arity];
+        }
+        Environment.Function function = base != null ? base.findFunction(name, arity) : null;
+        if (function != null) {
+            return function;
         } else if (parent != null) {
             return parent.lookupFunction(name, arity);
         } else {
@@ -72,12 +117,24 @@ public final class Scope {
         }
     }
 
+    int getDefinitionCount() {
+        return root.definitions;
+    }
+
     @Override
     public String toString() {
+        List<String> keys = new ArrayList<>();
+        functions.forEach((name, overloads) -> {
+            for (int arity = 0; arity < overloads.length; arity++) {
+                if (overloads[arity] != null) {
+                    keys.add(name + "/" + arity);
+                }
+            }
+        });
         return "Scope{" +
                 "parent=" + parent +
                 ", variables=" + variables.keySet() +
-                ", functions=" + functions.keySet() +
+                ", functions=" + keys +
                 '}';
     }
 
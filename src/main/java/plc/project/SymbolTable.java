@@ -0,0 +1,165 @@
+package plc.project;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Interns identifier literals to small integer ids. Keywords are registered
+ * first in a fixed order, so their ids are the same in every table and can be
+ * used as {@code case} labels by the parser.
+ *
+ * Lookups hash the characters in place, so interning an identifier that has
+ * already been seen does not allocate. Tables are not thread safe; each lexer
+ * owns its own.
+ */
+public final class SymbolTable {
+
+    public static final int NONE = -1;
+
+    public static final int LET = 0;
+    public static final int DEF = 1;
+    public static final int DO = 2;
+    public static final int END = 3;
+    public static final int IF = 4;
+    public static final int ELSE = 5;
+    public static final int FOR = 6;
+    public static final int IN = 7;
+    public static final int WHILE = 8;
+    public static final int RETURN = 9;
+    public static final int AND = 10;
+    public static final int OR = 11;
+    public static final int NIL = 12;
+    public static final int TRUE = 13;
+    public static final int FALSE = 14;
+
+    private static final String[] KEYWORDS = {
+            "LET", "DEF", "DO", "END", "IF", "ELSE", "FOR", "IN",
+            "WHILE", "RETURN", "AND", "OR", "NIL", "TRUE", "FALSE"
+    };
+
+    private int[] slots = new int[128];
+    private int[] hashes = new int[64];
+    private String[] names = new String[64];
+    private char[] scratch = new char[32];
+    private int size = 0;
+
+    public SymbolTable() {
+        for (String keyword : KEYWORDS) {
+            intern(keyword);
+        }
+    }
+
+    public static boolean isKeyword(int id) {
+        return id >= 0 && id < KEYWORDS.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getName(int id) {
+        return names[id];
+    }
+
+    public int intern(String name) {
+        return intern(name, 0, name.length());
+    }
+
+    public int intern(CharSequence text, int start, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + text.charAt(start + i);
+        }
+        int mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && names[id].length() == length && regionMatches(names[id], text, start)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return add(text.subSequence(start, start + length).toString(), hash, slot);
+    }
+
+    public int intern(char[] chars, int offset, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[offset + i];
+        }
+        int mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && names[id].length() == length && regionMatches(names[id], chars, offset)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return add(new String(chars, offset, length), hash, slot);
+    }
+
+    /**
+     * Interns an identifier stored as bytes. Identifiers are always ASCII, so
+     * each byte is a single character.
+     */
+    public int intern(ByteBuffer bytes, int offset, int length) {
+        if (scratch.length < length) {
+            scratch = new char[Math.max(length, scratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            scratch[i] = (char) (bytes.get(offset + i) & 0xFF);
+        }
+        return intern(scratch, 0, length);
+    }
+
+    private int add(String name, int hash, int slot) {
+        int id = size++;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, names.length * 2);
+            hashes = Arrays.copyOf(hashes, hashes.length * 2);
+        }
+        names[id] = name;
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean regionMatches(String name, CharSequence text, int start) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionMatches(String name, char[] chars, int offset) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -1,5 +1,8 @@
 package plc.project;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 public final class Token {
     public enum Type {
         IDENTIFIER,
@@ -11,13 +14,43 @@ public final class Token {
     }
 
     private final Type type;
-    private final String literal;
+    private String literal;
     private final int index;
+    private final int symbol;
+
+    private final ByteBuffer source;
+    private final int offset;
+    private final int size;
 
     public Token(Type type, String literal, int index) {
+        this(type, literal, index, SymbolTable.NONE);
+    }
+
+    /**
+     * Creates a token carrying the id its literal was interned to, see
+     * {@link SymbolTable}.
+     */
+    Token(Type type, String literal, int index, int symbol) {
         this.type = type;
         this.literal = literal;
         this.index = index;
+        this.symbol = symbol;
+        this.source = null;
+        this.offset = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Creates a token whose literal is the UTF-8 encoded range of the given
+     * bytes. The literal is only decoded when {@link #getLiteral()} is called.
+     */
+    Token(Type type, ByteBuffer source, int offset, int size, int index) {
+        this.type = type;
+        this.index = index;
+        this.symbol = SymbolTable.NONE;
+        this.source = source;
+        this.offset = offset;
+        this.size = size;
     }
 
     public Type getType() {
@@ -25,6 +58,11 @@ public final class Token {
     }
 
     public String getLiteral() {
+        if (literal == null) {
+            byte[] bytes = new byte[size];
+            source.get(offset, bytes);
+            literal = new String(bytes, StandardCharsets.UTF_8);
+        }
         return literal;
     }
 
@@ -32,17 +70,25 @@ public final class Token {
         return index;
     }
 
+    /**
+     * Returns the interned id of this token's literal, or
+     * {@link SymbolTable#NONE} if it was not interned.
+     */
+    public int getSymbol() {
+        return symbol;
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Token
                 && type == ((Token) obj).type
-                && literal.equals(((Token) obj).literal)
+                && getLiteral().equals(((Token) obj).getLiteral())
                 && index == ((Token) obj).index;
     }
 
     @Override
     public String toString() {
-        return type + "=" + literal + "@" + index;
+        return type + "=" + getLiteral() + "@" + index;
     }
 
 }
@@ -0,0 +1,488 @@
+package plc.project;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A packed sequence of tokens stored as parallel arrays instead of individual
+ * {@link Token} objects. Literals are kept as ranges of a shared character
+ * sequence (either the original source or a pool owned by the buffer), or of
+ * the UTF-8 bytes of the source, and are only materialized into a
+ * {@link String} by {@link #getLiteral(int)}.
+ */
+public final class TokenBuffer {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int HIGH = -1;
+    private static final int LOW = -2;
+
+    private CharSequence text;
+    private final StringBuilder pool;
+    private final SymbolTable symbols;
+    private final ByteBuffer bytes;
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] indexes;
+    private int[] ids = new int[INITIAL_CAPACITY];
+
+    /**
+     * The number of bytes of each literal when it is a range of bytes, in
+     * which case starts are byte offsets and lengths are still in chars. A
+     * token which is a single surrogate of a four byte code point has
+     * {@link #HIGH} or {@link #LOW} instead, and starts at the code point.
+     */
+    private int[] sizes;
+    private int size = 0;
+
+    /**
+     * The position and length of the gap in the arrays once the buffer has
+     * been edited by {@link Lexer#relex}, see {@link #edit}. The start offset
+     * of a token after the gap is stored relative to the end of the text, so
+     * it does not change when text before it is edited.
+     */
+    private int gap = Integer.MAX_VALUE;
+    private int gapLength = 0;
+
+    /**
+     * Creates a buffer whose literals are ranges of the given source, in which
+     * case each token's start offset is also its index.
+     */
+    TokenBuffer(CharSequence source, SymbolTable symbols) {
+        this.text = source;
+        this.pool = null;
+        this.symbols = symbols;
+        this.bytes = null;
+        this.indexes = starts;
+    }
+
+    /**
+     * Creates a buffer whose literals are ranges of the given UTF-8 bytes,
+     * which are decoded when a literal is requested.
+     */
+    TokenBuffer(ByteBuffer source, SymbolTable symbols) {
+        this.text = null;
+        this.pool = null;
+        this.symbols = symbols;
+        this.bytes = source;
+        this.indexes = new int[INITIAL_CAPACITY];
+        this.sizes = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Creates a buffer which copies the characters of each literal into its
+     * own pool, for sources which are not retained (such as a reader).
+     */
+    TokenBuffer(SymbolTable symbols) {
+        this.pool = new StringBuilder();
+        this.text = pool;
+        this.symbols = symbols;
+        this.bytes = null;
+        this.indexes = new int[INITIAL_CAPACITY];
+    }
+
+    public static TokenBuffer of(List<Token> tokens) {
+        TokenBuffer buffer = new TokenBuffer(new SymbolTable());
+        for (Token token : tokens) {
+            buffer.add(token.getType(), token.getLiteral(), token.getIndex());
+        }
+        return buffer;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Token.Type getType(int i) {
+        return TYPES[types[at(i)]];
+    }
+
+    public int getIndex(int i) {
+        return i < gap ? indexes[i] : indexes[i + gapLength] + text.length();
+    }
+
+    public int getLength(int i) {
+        return lengths[at(i)];
+    }
+
+    /**
+     * Returns the interned id of the given token, or {@link SymbolTable#NONE}
+     * if it is not an identifier.
+     */
+    public int getSymbol(int i) {
+        return ids[at(i)];
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Returns the text literals are stored in, which is the source itself if
+     * the buffer was lexed from a {@link String} (and editable text once it
+     * has been edited), or null if they are bytes.
+     */
+    CharSequence getText() {
+        return text;
+    }
+
+    /**
+     * Returns the first token that could lex differently if the text at the
+     * given offset changes, which is any token whose end plus the lexer's
+     * lookahead reaches past the offset.
+     */
+    int firstAffected(int offset, int lookahead) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getIndex(middle) + getLength(middle) + lookahead > offset) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns true if the literals of this buffer are ranges of its source
+     * text, so it can be edited.
+     */
+    boolean isEditable() {
+        return pool == null && bytes == null;
+    }
+
+    /**
+     * Replaces the text in {@code [offset, offset + removed)} with the
+     * inserted text, first moving the gap of the arrays to the given token
+     * (the first one the edit can affect), and returns the edited text. Tokens from the gap on keep their offsets
+     * relative to the end of the text, so they are shifted by the edit
+     * without being touched. The first edit copies the source into a
+     * {@link GapText}, and later edits only copy the text and tokens between
+     * the previous edit and this one.
+     */
+    CharSequence edit(int first, int offset, int removed, String inserted) {
+        if (gap == Integer.MAX_VALUE) {
+            text = new GapText(text.toString());
+            gap = size;
+            gapLength = types.length - size;
+        }
+        int length = text.length();
+        if (first < gap) {
+            int count = gap - first;
+            move(first, first + gapLength, count);
+            for (int i = first + gapLength; i < gap + gapLength; i++) {
+                starts[i] -= length;
+            }
+        } else if (first > gap) {
+            int count = first - gap;
+            move(gap + gapLength, gap, count);
+            for (int i = gap; i < first; i++) {
+                starts[i] += length;
+            }
+        }
+        gap = first;
+        ((GapText) text).replace(offset, removed, inserted);
+        return text;
+    }
+
+    /**
+     * Replaces the tokens in {@code [from, to)} with those of the replacement,
+     * which must be lexed from the text returned by {@link #edit} with the
+     * gap at {@code from}.
+     */
+    void replace(int from, int to, TokenBuffer replacement) {
+        gapLength += to - from;
+        int count = replacement.size;
+        if (gapLength < count) {
+            int capacity = Math.max(types.length * 2, size - (to - from) + count + INITIAL_CAPACITY);
+            int after = types.length - gap - gapLength;
+            types = grow(types, capacity, after);
+            starts = grow(starts, capacity, after);
+            lengths = grow(lengths, capacity, after);
+            ids = grow(ids, capacity, after);
+            indexes = starts;
+            gapLength = capacity - gap - after;
+        }
+        System.arraycopy(replacement.types, 0, types, gap, count);
+        System.arraycopy(replacement.starts, 0, starts, gap, count);
+        System.arraycopy(replacement.lengths, 0, lengths, gap, count);
+        System.arraycopy(replacement.ids, 0, ids, gap, count);
+        gap += count;
+        gapLength -= count;
+        size += count - (to - from);
+    }
+
+    private void move(int from, int to, int count) {
+        System.arraycopy(types, from, types, to, count);
+        System.arraycopy(starts, from, starts, to, count);
+        System.arraycopy(lengths, from, lengths, to, count);
+        System.arraycopy(ids, from, ids, to, count);
+    }
+
+    /**
+     * Returns a copy of an array with the given capacity, keeping the
+     * elements before the gap at the start and the given number of elements
+     * after the gap at the end.
+     */
+    private byte[] grow(byte[] array, int capacity, int after) {
+        byte[] grown = new byte[capacity];
+        System.arraycopy(array, 0, grown, 0, gap);
+        System.arraycopy(array, array.length - after, grown, capacity - after, after);
+        return grown;
+    }
+
+    private int[] grow(int[] array, int capacity, int after) {
+        int[] grown = new int[capacity];
+        System.arraycopy(array, 0, grown, 0, gap);
+        System.arraycopy(array, array.length - after, grown, capacity - after, after);
+        return grown;
+    }
+
+    /**
+     * Joins buffers lexed from consecutive segments of the same source. Ids
+     * from each part's symbol table are re-interned into the first part's
+     * table in order, so they match the ids sequential lexing would assign.
+     */
+    static TokenBuffer concat(CharSequence source, List<TokenBuffer> parts) {
+        SymbolTable symbols = parts.get(0).symbols;
+        int size = 0;
+        for (TokenBuffer part : parts) {
+            size += part.size;
+        }
+        TokenBuffer result = new TokenBuffer(source, symbols);
+        result.allocate(size);
+        for (TokenBuffer part : parts) {
+            result.copy(result.size, part, 0, part.size);
+            if (part.symbols != symbols) {
+                int[] remap = new int[part.symbols.size()];
+                for (int id = 0; id < remap.length; id++) {
+                    remap[id] = symbols.intern(part.symbols.getName(id));
+                }
+                for (int i = result.size; i < result.size + part.size; i++) {
+                    if (result.ids[i] != SymbolTable.NONE) {
+                        result.ids[i] = remap[result.ids[i]];
+                    }
+                }
+            }
+            result.size += part.size;
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the (empty) arrays of a buffer sharing its source with arrays
+     * holding at least the given number of tokens.
+     */
+    private void allocate(int capacity) {
+        types = new byte[Math.max(capacity, INITIAL_CAPACITY)];
+        starts = new int[types.length];
+        lengths = new int[types.length];
+        ids = new int[types.length];
+        indexes = starts;
+    }
+
+    private void copy(int position, TokenBuffer source, int from, int count) {
+        System.arraycopy(source.types, from, types, position, count);
+        System.arraycopy(source.starts, from, starts, position, count);
+        System.arraycopy(source.lengths, from, lengths, position, count);
+        System.arraycopy(source.ids, from, ids, position, count);
+    }
+
+    /**
+     * Returns the literal of the given token. Identifiers return their
+     * interned name, so only other literals allocate a new string.
+     */
+    public String getLiteral(int i) {
+        int p = at(i);
+        if (ids[p] != SymbolTable.NONE) {
+            return symbols.getName(ids[p]);
+        } else if (bytes != null && sizes[p] < 0) {
+            byte[] pair = new byte[4];
+            bytes.get(starts[p], pair);
+            return String.valueOf(new String(pair, StandardCharsets.UTF_8).charAt(sizes[p] == HIGH ? 0 : 1));
+        } else if (bytes != null) {
+            byte[] literal = new byte[sizes[p]];
+            bytes.get(starts[p], literal);
+            return new String(literal, StandardCharsets.UTF_8);
+        }
+        int start = start(i);
+        return text.subSequence(start, start + lengths[p]).toString();
+    }
+
+    /**
+     * Returns true if the literal of the given token equals the given string,
+     * without materializing the literal.
+     */
+    public boolean literalEquals(int i, String literal) {
+        int p = at(i);
+        int length = lengths[p];
+        if (length != literal.length()) {
+            return false;
+        } else if (bytes != null) {
+            if (sizes[p] != length) {
+                return getLiteral(i).equals(literal);
+            }
+            for (int j = 0; j < length; j++) {
+                if (bytes.get(starts[p] + j) != literal.charAt(j)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        int start = start(i);
+        for (int j = 0; j < length; j++) {
+            if (text.charAt(start + j) != literal.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a character of the literal of the given token.
+     */
+    char charAt(int i, int offset) {
+        if (bytes == null) {
+            return text.charAt(start(i) + offset);
+        } else if (sizes[i] == lengths[i]) {
+            return (char) bytes.get(starts[i] + offset);
+        }
+        return getLiteral(i).charAt(offset);
+    }
+
+    public Token get(int i) {
+        if (bytes != null && ids[i] == SymbolTable.NONE && sizes[i] >= 0) {
+            return new Token(getType(i), bytes, starts[i], sizes[i], indexes[i]);
+        }
+        return new Token(getType(i), getLiteral(i), getIndex(i), getSymbol(i));
+    }
+
+    /**
+     * Returns a view of this buffer as a list, creating tokens on access.
+     */
+    public List<Token> asList() {
+        return new AbstractList<Token>() {
+
+            @Override
+            public Token get(int index) {
+                return TokenBuffer.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+        };
+    }
+
+    /**
+     * Adds a token whose literal is already present in the source text.
+     */
+    void add(Token.Type type, int start, int length) {
+        ensureCapacity();
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        ids[size] = intern(type, start, length);
+        size++;
+    }
+
+    /**
+     * Adds a token by appending its literal to the pool.
+     */
+    void add(Token.Type type, CharSequence literal, int index) {
+        ensureCapacity();
+        types[size] = (byte) type.ordinal();
+        starts[size] = pool.length();
+        lengths[size] = literal.length();
+        indexes[size] = index;
+        pool.append(literal);
+        ids[size] = intern(type, starts[size], lengths[size]);
+        size++;
+    }
+
+    /**
+     * Adds a token whose literal is the given number of bytes of the source
+     * at the offset, which decode to the given number of chars.
+     */
+    void add(Token.Type type, int offset, int count, int length, int index) {
+        ensureCapacity();
+        types[size] = (byte) type.ordinal();
+        starts[size] = offset;
+        lengths[size] = length;
+        sizes[size] = count;
+        indexes[size] = index;
+        ids[size] = type == Token.Type.IDENTIFIER ? symbols.intern(bytes, offset, count) : SymbolTable.NONE;
+        size++;
+    }
+
+    /**
+     * Adds a token of one char which is the high or low surrogate of the
+     * four byte code point at the offset.
+     */
+    void addSurrogate(Token.Type type, int offset, boolean low, int index) {
+        ensureCapacity();
+        types[size] = (byte) type.ordinal();
+        starts[size] = offset;
+        lengths[size] = 1;
+        sizes[size] = low ? LOW : HIGH;
+        indexes[size] = index;
+        ids[size] = SymbolTable.NONE;
+        size++;
+    }
+
+    void add(Token.Type type, char[] chars, int offset, int length, int index) {
+        ensureCapacity();
+        types[size] = (byte) type.ordinal();
+        starts[size] = pool.length();
+        lengths[size] = length;
+        indexes[size] = index;
+        pool.append(chars, offset, length);
+        ids[size] = intern(type, starts[size], length);
+        size++;
+    }
+
+    /**
+     * Returns the position in the arrays of the given token.
+     */
+    private int at(int i) {
+        return i < gap ? i : i + gapLength;
+    }
+
+    /**
+     * Returns the offset of the literal of the given token in the text.
+     */
+    private int start(int i) {
+        return i < gap ? starts[i] : starts[i + gapLength] + text.length();
+    }
+
+    private int intern(Token.Type type, int start, int length) {
+        return type == Token.Type.IDENTIFIER ? symbols.intern(text, start, length) : SymbolTable.NONE;
+    }
+
+    private void ensureCapacity() {
+        if (size == types.length) {
+            int capacity = types.length * 2;
+            boolean shared = indexes == starts;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            indexes = shared ? starts : Arrays.copyOf(indexes, capacity);
+            sizes = sizes == null ? null : Arrays.copyOf(sizes, capacity);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return asList().toString();
+    }
+
+}
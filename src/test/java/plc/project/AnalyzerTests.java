@@ -1,6 +1,7 @@
 package plc.project;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -403,6 +404,78 @@ public final class AnalyzerTests {
         );
     }
 
+    @Test
+    public void testAnalysis() {
+        // LET value: Integer = 1; DEF main(): Integer DO print(value + other); RETURN value; END
+        Ast.Expr.Access other = new Ast.Expr.Access(Optional.empty(), "other");
+        Ast.Expr.Binary binary = new Ast.Expr.Binary("+", new Ast.Expr.Access(Optional.empty(), "value"), other);
+        Ast.Source ast = new Ast.Source(
+                Arrays.asList(new Ast.Field("value", "Integer", Optional.of(new Ast.Expr.Literal(BigInteger.ONE)))),
+                Arrays.asList(new Ast.Method("main", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+                        new Ast.Stmt.Expression(new Ast.Expr.Function(Optional.empty(), "print", Arrays.asList(binary))),
+                        new Ast.Stmt.Return(new Ast.Expr.Access(Optional.empty(), "value"))
+                )))
+        );
+        Scope integer = new Scope(null);
+        integer.defineVariable("other", "other", Environment.Type.INTEGER, Environment.NIL);
+        Scope string = new Scope(null);
+        string.defineVariable("other", "other", Environment.Type.STRING, Environment.NIL);
+        Analysis first = Analyzer.analyze(ast, integer);
+        Analysis second = Analyzer.analyze(ast, string);
+        Assertions.assertEquals(Environment.Type.INTEGER, first.getType(binary));
+        Assertions.assertEquals(Environment.Type.STRING, second.getType(binary));
+        Assertions.assertEquals(Environment.Type.STRING, second.getVariable(other).getType());
+        Assertions.assertEquals(Environment.Type.INTEGER, first.getFunction(ast.getMethods().get(0)).getReturnType());
+        Assertions.assertNull(binary.getType());
+        Assertions.assertNull(other.getVariable());
+        Assertions.assertThrows(RuntimeException.class, () -> Analyzer.analyze(ast, new Scope(null)));
+    }
+
+    @Test
+    public void testAnalysisLazy() {
+        Ast.Source ast = new Parser(new Lexer("LET value: Integer = 1; DEF main(): Integer DO RETURN value; END").lexBuffer()).parseSourceLazy();
+        Analysis analysis = Analyzer.analyze(ast, new Scope(null));
+        Ast.Stmt.Return statement = (Ast.Stmt.Return) ast.getMethods().get(0).getStatements().get(0);
+        Assertions.assertEquals(analysis.getVariable(ast.getFields().get(0)), analysis.getVariable((Ast.Expr.Access) statement.getValue()));
+        Assertions.assertEquals(Environment.Type.INTEGER, analysis.getFunction(ast.getMethods().get(0)).getReturnType());
+    }
+
+    @Test
+    public void testAnalysisEdited() {
+        ParsedSource parsed = ParsedSource.parse("LET value: Integer = 1; DEF main(): Integer DO RETURN value; END");
+        Ast.Field field = parsed.getSource().getFields().get(0);
+        Analysis original = Analyzer.analyze(parsed.getSource(), new Scope(null));
+        ParsedSource edited = parsed.edit(54, 5, "value + value");
+        Ast.Source ast = edited.getSource();
+        Assertions.assertSame(field, ast.getFields().get(0));
+        Analysis analysis = Analyzer.analyze(ast, new Scope(null));
+        Ast.Stmt.Return statement = (Ast.Stmt.Return) ast.getMethods().get(0).getStatements().get(0);
+        Assertions.assertEquals(Environment.Type.INTEGER, analysis.getType(statement.getValue()));
+        Assertions.assertEquals(Environment.Type.INTEGER, analysis.getVariable(field).getType());
+        Assertions.assertNotSame(original.getVariable(field), analysis.getVariable(field));
+        Assertions.assertNull(original.getType(statement.getValue()));
+    }
+
+    @Test
+    public void testIsolate() {
+        // LET value: Tenant;
+        Ast.Stmt.Declaration ast = new Ast.Stmt.Declaration("value", Optional.of("Tenant"), Optional.empty());
+        Environment.Type tenant = new Environment.Type("Tenant", "Tenant", new Scope(Environment.Type.ANY.getScope()));
+        Isolate isolate = new Isolate();
+        isolate.registerType(tenant);
+        new Analyzer(new Scope(null), isolate).visit(ast);
+        Assertions.assertEquals(tenant, ast.getVariable().getType());
+        // DEF create(): Tenant DO END
+        Ast.Method method = new Ast.Method("create", Arrays.asList(), Arrays.asList(), Optional.of("Tenant"), Arrays.asList());
+        new Analyzer(new Scope(null), isolate).visit(method);
+        Assertions.assertEquals(tenant, method.getFunction().getReturnType());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> isolate.registerType(tenant));
+        Assertions.assertEquals(tenant, isolate.fork().getType("Tenant"));
+        Assertions.assertThrows(RuntimeException.class, () -> new Isolate().getType("Tenant"));
+        Assertions.assertThrows(RuntimeException.class, () -> new Analyzer(new Scope(null)).visit(ast));
+        Assertions.assertThrows(RuntimeException.class, () -> new Analyzer(new Scope(null)).visit(method));
+    }
+
     @ParameterizedTest(name = "{0}")
     @MethodSource
     public void testRequireAssignable(String test, Environment.Type target, Environment.Type type, boolean success) {
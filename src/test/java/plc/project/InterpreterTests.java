@@ -374,6 +374,169 @@ final class InterpreterTests {
         );
     }
 
+    @Test
+    void testResolvedVariables() {
+        // LET total = 0;
+        // DEF main() DO
+        //     LET x = 1; LET n = 0;
+        //     WHILE n < 3 DO LET x = 10; n = n + 1; total = total + x; END
+        //     RETURN x + total + offset;
+        // END
+        Scope scope = new Scope(null);
+        scope.defineVariable("offset", Environment.create(BigInteger.ONE));
+        Scope result = test(new Ast.Source(
+                Arrays.asList(new Ast.Field("total", Optional.of(new Ast.Expr.Literal(BigInteger.ZERO)))),
+                Arrays.asList(new Ast.Method("main", Arrays.asList(), Arrays.asList(
+                        new Ast.Stmt.Declaration("x", Optional.of(new Ast.Expr.Literal(BigInteger.ONE))),
+                        new Ast.Stmt.Declaration("n", Optional.of(new Ast.Expr.Literal(BigInteger.ZERO))),
+                        new Ast.Stmt.While(
+                                new Ast.Expr.Binary("<",
+                                        new Ast.Expr.Access(Optional.empty(), "n"),
+                                        new Ast.Expr.Literal(BigInteger.valueOf(3))
+                                ),
+                                Arrays.asList(
+                                        new Ast.Stmt.Declaration("x", Optional.of(new Ast.Expr.Literal(BigInteger.TEN))),
+                                        new Ast.Stmt.Assignment(
+                                                new Ast.Expr.Access(Optional.empty(), "n"),
+                                                new Ast.Expr.Binary("+", new Ast.Expr.Access(Optional.empty(), "n"), new Ast.Expr.Literal(BigInteger.ONE))
+                                        ),
+                                        new Ast.Stmt.Assignment(
+                                                new Ast.Expr.Access(Optional.empty(), "total"),
+                                                new Ast.Expr.Binary("+", new Ast.Expr.Access(Optional.empty(), "total"), new Ast.Expr.Access(Optional.empty(), "x"))
+                                        )
+                                )
+                        ),
+                        new Ast.Stmt.Return(new Ast.Expr.Binary("+",
+                                new Ast.Expr.Binary("+", new Ast.Expr.Access(Optional.empty(), "x"), new Ast.Expr.Access(Optional.empty(), "total")),
+                                new Ast.Expr.Access(Optional.empty(), "offset")
+                        ))
+                )))
+        ), BigInteger.valueOf(32), scope);
+        Assertions.assertEquals(BigInteger.valueOf(30), result.lookupVariable("total").getValue().getValue());
+    }
+
+    @Test
+    void testResolvedLazyMethod() {
+        Ast.Source ast = new Parser(new Lexer("LET total: Integer = 5; DEF main() DO LET x = 1; LET y = 2; RETURN x + y + total; END").lexBuffer()).parseSourceLazy();
+        test(ast, BigInteger.valueOf(8), new Scope(null));
+
+        // the body of unused is invalid, which is only noticed once it is called
+        Ast.Source invalid = new Parser(new Lexer("DEF unused() DO LET = ; END DEF main() DO RETURN 1; END").lexBuffer()).parseSourceLazy();
+        Scope scope = test(invalid, BigInteger.ONE, new Scope(null));
+        Environment.Function unused = scope.lookupFunction("unused", 0);
+        Assertions.assertThrows(ParseException.class, () -> unused.invoke(Arrays.asList()));
+    }
+
+    @Test
+    void testResolvedInternedSource() {
+        // DEF main() DO
+        //     LET n = 0;
+        //     IF TRUE DO LET a = 10; LET x = 1; n = n + x; END ELSE DO LET x = 2; n = n + x; END
+        //     RETURN n;
+        // END
+        // where both x and n + x are shared, but x has a different slot in each branch
+        Ast.Stmt.Assignment increment = new Ast.Stmt.Assignment(
+                new Ast.Expr.Access(Optional.empty(), "n"),
+                new Ast.Expr.Binary("+", new Ast.Expr.Access(Optional.empty(), "n"), new Ast.Expr.Access(Optional.empty(), "x"))
+        );
+        Ast.Source ast = new AstInterner().intern(new Ast.Source(
+                Arrays.asList(),
+                Arrays.asList(new Ast.Method("main", Arrays.asList(), Arrays.asList(
+                        new Ast.Stmt.Declaration("n", Optional.of(new Ast.Expr.Literal(BigInteger.ZERO))),
+                        new Ast.Stmt.If(new Ast.Expr.Literal(true),
+                                Arrays.asList(
+                                        new Ast.Stmt.Declaration("a", Optional.of(new Ast.Expr.Literal(BigInteger.TEN))),
+                                        new Ast.Stmt.Declaration("x", Optional.of(new Ast.Expr.Literal(BigInteger.ONE))),
+                                        increment
+                                ),
+                                Arrays.asList(
+                                        new Ast.Stmt.Declaration("x", Optional.of(new Ast.Expr.Literal(BigInteger.TWO))),
+                                        increment
+                                )
+                        ),
+                        new Ast.Stmt.Return(new Ast.Expr.Access(Optional.empty(), "n"))
+                )))
+        ));
+        test(ast, BigInteger.ONE, new Scope(null));
+    }
+
+    @Test
+    void testCachedFunctionCall() {
+        Scope scope = new Scope(null);
+        scope.defineFunction("function", 0, args -> Environment.create("outer"));
+        scope.defineFunction("function", 1, args -> args.get(0));
+        Interpreter interpreter = new Interpreter(scope);
+        // DEF main() DO RETURN function(); END
+        interpreter.visit(new Ast.Method("main", Arrays.asList(), Arrays.asList(
+                new Ast.Stmt.Return(new Ast.Expr.Function(Optional.empty(), "function", Arrays.asList()))
+        )));
+        Environment.Function main = interpreter.getScope().lookupFunction("main", 0);
+        Assertions.assertEquals("outer", main.invoke(Arrays.asList()).getValue());
+        interpreter.getScope().defineFunction("function", 0, args -> Environment.create("inner"));
+        Assertions.assertEquals("inner", main.invoke(Arrays.asList()).getValue());
+        int definitions = scope.getDefinitionCount();
+        new Interpreter(new Scope(null)).getScope().defineFunction("function", 0, args -> Environment.create("unrelated"));
+        Assertions.assertEquals(definitions, scope.getDefinitionCount());
+        Assertions.assertEquals("inner", main.invoke(Arrays.asList()).getValue());
+        Assertions.assertEquals("argument", scope.lookupFunction("function", 1).invoke(Arrays.asList(Environment.create("argument"))).getValue());
+    }
+
+    @Test
+    void testPersistentScope() {
+        PersistentScope globals = PersistentScope.EMPTY
+                .defineVariable("variable", Environment.create("global"))
+                .defineFunction("function", 1, args -> args.get(0));
+        Scope first = globals.fork();
+        Scope second = globals.fork();
+        // variable = function("first");
+        new Interpreter(first).visit(new Ast.Stmt.Assignment(
+                new Ast.Expr.Access(Optional.empty(), "variable"),
+                new Ast.Expr.Function(Optional.empty(), "function", Arrays.asList(new Ast.Expr.Literal("first")))
+        ));
+        Assertions.assertEquals("first", first.lookupVariable("variable").getValue().getValue());
+        Assertions.assertEquals("global", second.lookupVariable("variable").getValue().getValue());
+        Assertions.assertEquals("global", globals.lookupVariable("variable").getValue().getValue());
+        globals.lookupVariable("variable").setValue(Environment.create("changed"));
+        Assertions.assertEquals("global", globals.lookupVariable("variable").getValue().getValue());
+        Assertions.assertEquals("global", globals.fork().lookupVariable("variable").getValue().getValue());
+        Assertions.assertSame(first.lookupFunction("function", 1), second.lookupFunction("function", 1));
+        Assertions.assertThrows(RuntimeException.class, () -> first.defineVariable("variable", Environment.NIL));
+    }
+
+    @Test
+    void testCompactValues() {
+        Assertions.assertSame(Environment.TRUE, Environment.create(true));
+        Assertions.assertSame(Environment.FALSE, Environment.create(false));
+        Assertions.assertSame(Environment.create(BigInteger.valueOf(100)), Environment.create(new BigInteger("100")));
+        Assertions.assertNotSame(Environment.create(BigInteger.valueOf(100000)), Environment.create(BigInteger.valueOf(100000)));
+        Assertions.assertEquals(BigInteger.valueOf(100000), Environment.create(BigInteger.valueOf(100000)).getValue());
+        Assertions.assertEquals("Integer", Environment.create(BigInteger.ONE).getType().getName());
+        Assertions.assertSame(Environment.create(BigInteger.ONE).getType(), Environment.create(BigInteger.valueOf(100000)).getType());
+        Assertions.assertEquals("String", Environment.create("string").getType().getName());
+        Assertions.assertEquals("Boolean", Environment.TRUE.getType().getName());
+        Assertions.assertEquals("Decimal", Environment.create(BigDecimal.ONE).getType().getName());
+        Assertions.assertEquals("Character", Environment.create('c').getType().getName());
+        Assertions.assertEquals("Unknown", Environment.create(new Object()).getType().getName());
+        Assertions.assertThrows(RuntimeException.class, () -> Environment.create(BigInteger.ONE).getField("field"));
+        Assertions.assertThrows(RuntimeException.class, () -> Environment.create(BigInteger.ONE).callMethod("compare", Arrays.asList(Environment.create(BigInteger.TEN))));
+        Assertions.assertThrows(RuntimeException.class, () -> Environment.create("string").callMethod("stringify", Arrays.asList()));
+        // 1 < 2
+        Environment.PlcObject result = new Interpreter(new Scope(null)).visit(new Ast.Expr.Binary("<",
+                new Ast.Expr.Literal(BigInteger.ONE),
+                new Ast.Expr.Literal(BigInteger.valueOf(2))
+        ));
+        Assertions.assertSame(Environment.TRUE, result);
+    }
+
+    @Test
+    void testLongBinaryChain() {
+        Ast.Expr expr = new Ast.Expr.Literal(BigInteger.ONE);
+        for (int i = 1; i < 100000; i++) {
+            expr = new Ast.Expr.Binary("+", expr, new Ast.Expr.Literal(BigInteger.ONE));
+        }
+        test(expr, BigInteger.valueOf(100000), new Scope(null));
+    }
+
     private static Scope test(Ast ast, Object expected, Scope scope) {
         Interpreter interpreter = new Interpreter(scope);
         if (expected != null) {
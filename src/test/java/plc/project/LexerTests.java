@@ -2,12 +2,20 @@ package plc.project;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 public class LexerTests {
@@ -138,6 +146,187 @@ public class LexerTests {
         Assertions.assertEquals(13, exception.getIndex());
     }
 
+    @ParameterizedTest
+    @MethodSource("testExamples")
+    void testReader(String test, String input, List<Token> expected) {
+        Assertions.assertEquals(expected, new Lexer(new StringReader(input)).lex());
+    }
+
+    @Test
+    void testReaderChunkBoundary() {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            input.append("LET x").append(i).append(" = \"Hello, World!\";\n");
+        }
+        Assertions.assertEquals(new Lexer(input.toString()).lex(), new Lexer(new StringReader(input.toString())).lex());
+    }
+
+    @Test
+    void testStringChunkBoundary() {
+        String literal = "\"" + "a".repeat(20000) + "\"";
+        Assertions.assertEquals(Arrays.asList(
+                new Token(Token.Type.IDENTIFIER, "x", 0),
+                new Token(Token.Type.STRING, literal, 2)
+        ), new Lexer("x " + literal).lex());
+    }
+
+    @Test
+    void testReaderException() {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Lexer(new StringReader("\"unterminated")).lex());
+        Assertions.assertEquals(13, exception.getIndex());
+    }
+
+    @ParameterizedTest
+    @MethodSource("testExamples")
+    void testBytes(String test, String input, List<Token> expected) {
+        Assertions.assertEquals(expected, new Lexer(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8))).lex());
+    }
+
+    @Test
+    void testMapped(@TempDir Path directory) throws IOException {
+        String input = "print(\"\u00e9\u20ac\ud83d\ude00\"); x";
+        Path file = Files.write(directory.resolve("source.plc"), input.getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(new Lexer(input).lex(), Lexer.map(file).lex());
+    }
+
+    @ParameterizedTest
+    @MethodSource("testExamples")
+    void testBuffer(String test, String input, List<Token> expected) {
+        Assertions.assertEquals(expected, new Lexer(input).lexBuffer().asList());
+        Assertions.assertEquals(expected, new Lexer(new StringReader(input)).lexBuffer().asList());
+        Assertions.assertEquals(expected, new Lexer(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8))).lexBuffer().asList());
+    }
+
+    @Test
+    void testBufferFromBytes() {
+        String input = "LET x = \"\u20ac\ud83d\ude00\"; \u00b1 y";
+        TokenBuffer tokens = new Lexer(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8))).lexBuffer();
+        Assertions.assertNull(tokens.getText());
+        Assertions.assertEquals(new Lexer(input).lexBuffer().asList(), tokens.asList());
+        Assertions.assertTrue(tokens.literalEquals(3, "\"\u20ac\ud83d\ude00\""));
+        Assertions.assertTrue(tokens.literalEquals(5, "\u00b1"));
+        Assertions.assertEquals(5, tokens.getLength(3));
+        Assertions.assertEquals(input.length() - 1, tokens.getIndex(6));
+    }
+
+    @Test
+    void testSurrogatesOutsideLiterals() {
+        String input = "x \ud83d\ude00 y";
+        List<Token> expected = Arrays.asList(
+                new Token(Token.Type.IDENTIFIER, "x", 0),
+                new Token(Token.Type.OPERATOR, "\ud83d", 2),
+                new Token(Token.Type.OPERATOR, "\ude00", 3),
+                new Token(Token.Type.IDENTIFIER, "y", 5)
+        );
+        Assertions.assertEquals(expected, new Lexer(input).lex());
+        Assertions.assertEquals(expected, new Lexer(new StringReader(input)).lex());
+        Assertions.assertEquals(expected, new Lexer(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8))).lex());
+        TokenBuffer tokens = new Lexer(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8))).lexBuffer();
+        Assertions.assertEquals(expected, tokens.asList());
+        Assertions.assertTrue(tokens.literalEquals(2, "\ude00"));
+    }
+
+    @Test
+    void testSymbols() {
+        List<Token> tokens = new Lexer("LET x = x; END").lex();
+        Assertions.assertEquals(SymbolTable.LET, tokens.get(0).getSymbol());
+        Assertions.assertEquals(tokens.get(1).getSymbol(), tokens.get(3).getSymbol());
+        Assertions.assertFalse(SymbolTable.isKeyword(tokens.get(1).getSymbol()));
+        Assertions.assertEquals(SymbolTable.NONE, tokens.get(2).getSymbol());
+        Assertions.assertEquals(SymbolTable.END, tokens.get(5).getSymbol());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRelex(String test, String input, int offset, int removed, String inserted) {
+        String edited = input.substring(0, offset) + inserted + input.substring(offset + removed);
+        TokenBuffer tokens = Lexer.relex(new Lexer(input).lexBuffer(), offset, removed, inserted);
+        Assertions.assertEquals(new Lexer(edited).lex(), tokens.asList());
+    }
+
+    @Test
+    void testRelexSequence() {
+        String text = "LET x = 5;\nprint(\"x\");\nLET y = 6;\n".repeat(100);
+        TokenBuffer tokens = new Lexer(text).lexBuffer();
+        int[][] edits = {{1704, 1}, {1670, 1}, {72, 0}, {3370, 1}, {1024, 1}, {1025, 0}};
+        for (int[] edit : edits) {
+            text = text.substring(0, edit[0]) + "z" + text.substring(edit[0] + edit[1]);
+            Assertions.assertSame(tokens, Lexer.relex(tokens, edit[0], edit[1], "z"));
+            Assertions.assertEquals(new Lexer(text).lex(), tokens.asList());
+        }
+        String unterminated = text;
+        Assertions.assertThrows(ParseException.class, () -> Lexer.relex(tokens, 12, 0, "\""));
+        Assertions.assertEquals(unterminated, tokens.getText().toString());
+        Assertions.assertEquals(new Lexer(unterminated).lex(), tokens.asList());
+    }
+
+    private static Stream<Arguments> testRelex() {
+        return Stream.of(
+                Arguments.of("Insert Token", "LET x = 5;\nLET y = 6;", 8, 0, "1 + "),
+                Arguments.of("Extend Identifier", "LET x = 5;\nLET y = 6;", 5, 0, "yz"),
+                Arguments.of("Merge Decimal", "LET x = 1.;", 10, 0, "5"),
+                Arguments.of("Remove Line", "LET x = 5;\nLET y = 6;\nLET z = 7;", 10, 11, ""),
+                Arguments.of("Open String", "print(x);\nprint(y);", 6, 1, "\"x\""),
+                Arguments.of("Append", "LET x = 5;", 10, 0, " END")
+        );
+    }
+
+    @Test
+    void testParallel() {
+        String input = "LET x = 1.5;\nprint(\"line\\n\", x, 'c');\nDEF f() DO RETURN y; END\n".repeat(20000);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            TokenBuffer tokens = Lexer.lexParallel(input, pool);
+            TokenBuffer expected = new Lexer(input).lexBuffer();
+            Assertions.assertEquals(expected.asList(), tokens.asList());
+            for (int i = 0; i < tokens.size(); i++) {
+                Assertions.assertEquals(expected.getSymbol(i), tokens.getSymbol(i));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testParallelException() {
+        String input = "LET x = 1;\n".repeat(20000) + "print(\"unterminated);\n" + "LET y = 2;\n".repeat(20000) + "'";
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Lexer(input).lexBuffer());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParseException exception = Assertions.assertThrows(ParseException.class, () -> Lexer.lexParallel(input, pool));
+            Assertions.assertEquals(expected.getIndex(), exception.getIndex());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testVectorized(String test, String input) {
+        boolean vectorized = Lexer.isVectorized();
+        try {
+            Lexer.setVectorized(false);
+            List<Token> expected = new Lexer(input).lex();
+            Lexer.setVectorized(true);
+            Assertions.assertEquals(expected, new Lexer(input).lex());
+            Assertions.assertEquals(expected, new Lexer(new StringReader(input)).lex());
+            Assertions.assertEquals(expected, new Lexer(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8))).lex());
+        } finally {
+            Lexer.setVectorized(vectorized);
+        }
+    }
+
+    private static Stream<Arguments> testVectorized() {
+        return Stream.of(
+                Arguments.of("Long Identifier", "abcdefghijklmnopqrstuvwxyz_ABCDEFGHIJKLMNOPQRSTUVWXYZ-0123456789".repeat(3) + "(x);"),
+                Arguments.of("Long Whitespace", " \t\n\r\b".repeat(40) + "x" + " ".repeat(100)),
+                Arguments.of("Long Integer", "1234567890".repeat(20) + ".5 + -" + "9".repeat(70)),
+                Arguments.of("Run Into Unicode", "identifier_with_a_long_name" + "é".repeat(40)),
+                Arguments.of("Chunk Boundary", "x ".repeat(4000) + "y".repeat(8300) + " ".repeat(8200) + "z")
+        );
+    }
+
     /**
      * Tests that lexing the input through {@link Lexer#lexToken()} produces a
      * single token with the expected type and literal matching the input.
@@ -8,6 +8,7 @@ import org.junit.jupiter.params.provider.MethodSource;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -189,6 +190,43 @@ final class ParserExpressionTests {
                                 new Ast.Expr.Access(Optional.empty(), "expr1"),
                                 new Ast.Expr.Access(Optional.empty(), "expr2")
                         )
+                ),
+                Arguments.of("Binary Precedence",
+                        Arrays.asList(
+                                //a - b * c + d < e OR f AND g
+                                new Token(Token.Type.IDENTIFIER, "a", 0),
+                                new Token(Token.Type.OPERATOR, "-", 2),
+                                new Token(Token.Type.IDENTIFIER, "b", 4),
+                                new Token(Token.Type.OPERATOR, "*", 6),
+                                new Token(Token.Type.IDENTIFIER, "c", 8),
+                                new Token(Token.Type.OPERATOR, "+", 10),
+                                new Token(Token.Type.IDENTIFIER, "d", 12),
+                                new Token(Token.Type.OPERATOR, "<", 14),
+                                new Token(Token.Type.IDENTIFIER, "e", 16),
+                                new Token(Token.Type.IDENTIFIER, "OR", 18),
+                                new Token(Token.Type.IDENTIFIER, "f", 21),
+                                new Token(Token.Type.IDENTIFIER, "AND", 23),
+                                new Token(Token.Type.IDENTIFIER, "g", 27)
+                        ),
+                        new Ast.Expr.Binary("OR",
+                                new Ast.Expr.Binary("<",
+                                        new Ast.Expr.Binary("+",
+                                                new Ast.Expr.Binary("-",
+                                                        new Ast.Expr.Access(Optional.empty(), "a"),
+                                                        new Ast.Expr.Binary("*",
+                                                                new Ast.Expr.Access(Optional.empty(), "b"),
+                                                                new Ast.Expr.Access(Optional.empty(), "c")
+                                                        )
+                                                ),
+                                                new Ast.Expr.Access(Optional.empty(), "d")
+                                        ),
+                                        new Ast.Expr.Access(Optional.empty(), "e")
+                                ),
+                                new Ast.Expr.Binary("AND",
+                                        new Ast.Expr.Access(Optional.empty(), "f"),
+                                        new Ast.Expr.Access(Optional.empty(), "g")
+                                )
+                        )
                 )
         );
     }
@@ -266,6 +304,60 @@ final class ParserExpressionTests {
         );
     }
 
+    @Test
+    void testLongBinaryChain() {
+        Ast.Expr expr = new Parser(new Lexer("x" + " + x".repeat(100000)).lexBuffer()).parseExpression();
+        int length = 0;
+        while (expr instanceof Ast.Expr.Binary) {
+            Assertions.assertEquals(new Ast.Expr.Access(Optional.empty(), "x"), ((Ast.Expr.Binary) expr).getRight());
+            expr = ((Ast.Expr.Binary) expr).getLeft();
+            length++;
+        }
+        Assertions.assertEquals(100000, length);
+    }
+
+    @Test
+    void testDeeplyNestedGroups() {
+        Ast.Expr expr = new Parser(new Lexer("(".repeat(100000) + "f(x)" + ")".repeat(100000)).lexBuffer()).parseExpression();
+        int depth = 0;
+        while (expr instanceof Ast.Expr.Group) {
+            expr = ((Ast.Expr.Group) expr).getExpression();
+            depth++;
+        }
+        Assertions.assertEquals(100000, depth);
+        Assertions.assertEquals(new Ast.Expr.Function(Optional.empty(), "f", Arrays.asList(new Ast.Expr.Access(Optional.empty(), "x"))), expr);
+    }
+
+    @Test
+    void testInterned() {
+        String source = "obj.f(x + 1, (x + 1) * 2)" + " + x".repeat(100000);
+        Ast.Expr first = new Parser(new Lexer(source).lexBuffer()).parseExpression();
+        Ast.Expr second = new Parser(new Lexer(source).lexBuffer()).parseExpression();
+        Assertions.assertEquals(first.hashCode(), second.hashCode());
+        AstInterner interner = new AstInterner();
+        Ast.Expr interned = interner.intern(first);
+        Assertions.assertEquals(second, interned);
+        Assertions.assertSame(interned, interner.intern(second));
+        Assertions.assertSame(interner.access(Optional.empty(), "x"), ((Ast.Expr.Binary) interned).getRight());
+        Ast.Expr call = interned;
+        while (call instanceof Ast.Expr.Binary) {
+            call = ((Ast.Expr.Binary) call).getLeft();
+        }
+        List<Ast.Expr> arguments = ((Ast.Expr.Function) call).getArguments();
+        Assertions.assertSame(arguments.get(0), ((Ast.Expr.Group) ((Ast.Expr.Binary) arguments.get(1)).getLeft()).getExpression());
+    }
+
+    @Test
+    void testFunctionArgumentsCopied() {
+        List<Ast.Expr> arguments = new ArrayList<>(Arrays.asList(new Ast.Expr.Literal(BigInteger.ONE)));
+        Ast.Expr.Function function = new Ast.Expr.Function(Optional.empty(), "f", arguments);
+        Ast.Expr.Function equal = new Ast.Expr.Function(Optional.empty(), "f", Arrays.asList(new Ast.Expr.Literal(BigInteger.ONE)));
+        Assertions.assertEquals(equal.hashCode(), function.hashCode());
+        arguments.add(new Ast.Expr.Literal(BigInteger.TEN));
+        Assertions.assertEquals(equal, function);
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> function.getArguments().clear());
+    }
+
  
     /**
      * Standard test function. If expected is null, a ParseException is expected
@@ -8,9 +8,17 @@ import org.junit.jupiter.params.provider.MethodSource;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
@@ -68,6 +76,273 @@ final class ParserTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource("testSource")
+    void testSourceBuffer(String test, List<Token> tokens, Ast.Source expected) {
+        Assertions.assertEquals(expected, new Parser(TokenBuffer.of(tokens)).parseSource());
+    }
+
+    @ParameterizedTest
+    @MethodSource("testSource")
+    void testSourceParallel(String test, List<Token> tokens, Ast.Source expected) {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Assertions.assertEquals(expected, new Parser(TokenBuffer.of(tokens)).parseSourceParallel(pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("testSource")
+    void testSourceLazy(String test, List<Token> tokens, Ast.Source expected) {
+        Assertions.assertEquals(expected, new Parser(TokenBuffer.of(tokens)).parseSourceLazy());
+    }
+
+    @Test
+    void testSourceLazyException() {
+        Ast.Source source = new Parser(new Lexer("DEF f() DO x = ; END DEF g() DO RETURN 1; END").lexBuffer()).parseSourceLazy();
+        Assertions.assertEquals(2, source.getMethods().size());
+        Assertions.assertEquals(1, source.getMethods().get(1).getStatements().size());
+        ParseException exception = Assertions.assertThrows(ParseException.class, () -> source.getMethods().get(0).getStatements().size());
+        Assertions.assertEquals(15, exception.getIndex());
+    }
+
+    @Test
+    void testSourceLazyIds() {
+        Ast.Source source = new Parser(new Lexer("DEF f() DO RETURN 1 + 2; END DEF g() DO RETURN 3; END").lexBuffer()).parseSourceLazy();
+        // the bodies are parsed in the opposite order, and still get ids of their own
+        Ast.Stmt.Return three = (Ast.Stmt.Return) source.getMethods().get(1).getStatements().get(0);
+        Ast.Stmt.Return sum = (Ast.Stmt.Return) source.getMethods().get(0).getStatements().get(0);
+        Ast.Expr.Binary binary = (Ast.Expr.Binary) sum.getValue();
+        List<Ast> nodes = Arrays.asList(source, source.getMethods().get(0), source.getMethods().get(1),
+                sum, binary, binary.getLeft(), binary.getRight(), three, three.getValue());
+        Assertions.assertEquals(nodes.size(), nodes.stream().mapToInt(node -> node.id).distinct().count());
+        Assertions.assertTrue(nodes.stream().allMatch(node -> node.id >= 0 && node.id <= source.id));
+    }
+
+    @ParameterizedTest
+    @MethodSource("testSource")
+    void testSourceConsumer(String test, List<Token> tokens, Ast.Source expected) {
+        List<Ast.Field> fields = new ArrayList<>();
+        List<Ast.Method> methods = new ArrayList<>();
+        new Parser(tokens).parseSource(fields::add, methods::add);
+        Assertions.assertEquals(expected, new Ast.Source(fields, methods));
+    }
+
+    @Test
+    void testSourcePublisher() throws Exception {
+        TokenBuffer tokens = new Lexer("LET x: Integer = 1; DEF f() DO RETURN x; END DEF g( DO END").lexBuffer();
+        List<Ast> units = new ArrayList<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        new Parser(tokens).publishSource(ForkJoinPool.commonPool()).subscribe(new Flow.Subscriber<Ast>() {
+
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(Ast unit) {
+                units.add(unit);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(null);
+            }
+
+        });
+        ExecutionException exception = Assertions.assertThrows(ExecutionException.class, () -> done.get(10, TimeUnit.SECONDS));
+        Assertions.assertInstanceOf(ParseException.class, exception.getCause());
+        Assertions.assertEquals(Arrays.asList(
+                new Ast.Field("x", "Integer", Optional.of(new Ast.Expr.Literal(BigInteger.ONE))),
+                new Ast.Method("f", Arrays.asList(), Arrays.asList(
+                        new Ast.Stmt.Return(new Ast.Expr.Access(Optional.empty(), "x"))
+                ))
+        ), units);
+    }
+
+    @Test
+    void testSourcePublisherDemand() {
+        TokenBuffer tokens = new Lexer("LET x: Integer = 1; DEF f() DO RETURN x; END DEF g() DO END").lexBuffer();
+        Deque<Runnable> tasks = new ArrayDeque<>();
+        List<Object> signals = new ArrayList<>();
+        Flow.Subscription[] subscription = new Flow.Subscription[1];
+        new Parser(tokens).publishSource(tasks::add).subscribe(new Flow.Subscriber<Ast>() {
+
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription[0] = s;
+            }
+
+            @Override
+            public void onNext(Ast unit) {
+                signals.add(unit);
+                if (unit instanceof Ast.Method) {
+                    throw new IllegalStateException("subscriber failure");
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                signals.add(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                signals.add("complete");
+            }
+
+        });
+        Assertions.assertTrue(tasks.isEmpty());
+        subscription[0].request(1);
+        tasks.remove().run();
+        Assertions.assertEquals(1, signals.size());
+        Assertions.assertTrue(tasks.isEmpty());
+        subscription[0].request(2);
+        Assertions.assertThrows(IllegalStateException.class, () -> tasks.remove().run());
+        Assertions.assertEquals(2, signals.size());
+        subscription[0].request(1);
+        while (!tasks.isEmpty()) {
+            tasks.remove().run();
+        }
+        Assertions.assertEquals(2, signals.size());
+    }
+
+    @Test
+    void testSourceParallelChunks() {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            source.append("LET field").append(i).append(": Integer = ").append(i).append(";\n");
+            source.append("DEF method").append(i).append("(x) DO WHILE x > 0 DO x = x - 1; END RETURN x; END\n");
+        }
+        TokenBuffer tokens = new Lexer(source.toString()).lexBuffer();
+        Ast.Source expected = new Parser(tokens).parseSource();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Assertions.assertEquals(expected, new Parser(tokens).parseSourceParallel(pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testSourceParallelException() {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            source.append("DEF method").append(i).append("() DO RETURN ").append(i).append("; END\n");
+        }
+        source.append("DEF broken( DO END\n");
+        TokenBuffer tokens = new Lexer(source.toString()).lexBuffer();
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parseSource());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParseException exception = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parseSourceParallel(pool));
+            Assertions.assertEquals(expected.getIndex(), exception.getIndex());
+            Assertions.assertEquals(expected.getMessage(), exception.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testSourceArena() {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            source.append("LET field").append(i).append(": Integer = ").append(i).append(" * 2 + 1;\n");
+            source.append("DEF method").append(i).append("(x, y) DO LET z = x; WHILE z > 0 DO z = z - 1; END ");
+            source.append("FOR i IN y DO print(obj.f(i, \"s\", 'c', 1.5), NIL); END RETURN (x + y) * z; END\n");
+        }
+        TokenBuffer tokens = new Lexer(source.toString()).lexBuffer();
+        Ast.Source expected = new Parser(tokens).parseSource();
+        AstArena arena = AstArena.parse(new Parser(tokens));
+        Assertions.assertEquals(expected, arena.toSource());
+        Assertions.assertEquals(expected, AstArena.of(expected).toSource());
+        Ast.Source view = arena.toSource();
+        Assertions.assertSame(view.getMethods().get(0), view.getMethods().get(0));
+    }
+
+    @Test
+    void testSourceSerialized() {
+        String source = "LET x: Integer = 1 + 2;\nLET s: String = \"s\";\n"
+                + "DEF main(): Integer DO LET y: Decimal = 1.5; y = y * 2.0; print(s + 'c'); RETURN x; END";
+        Ast.Source expected = new Parser(new Lexer(source).lexBuffer()).parseSource();
+        new Analyzer(new Scope(null)).visit(expected);
+        Ast.Source loaded = AstSerializer.read(AstSerializer.write(expected));
+        Assertions.assertEquals(expected, loaded);
+        Assertions.assertEquals(Environment.Type.INTEGER, loaded.getFields().get(0).getValue().get().getType());
+        Assertions.assertEquals(expected.getMethods().get(0).getFunction(), loaded.getMethods().get(0).getFunction());
+        List<Ast.Stmt> statements = loaded.getMethods().get(0).getStatements();
+        Ast.Stmt.Assignment assignment = (Ast.Stmt.Assignment) statements.get(1);
+        Assertions.assertSame(((Ast.Stmt.Declaration) statements.get(0)).getVariable(), ((Ast.Expr.Access) assignment.getReceiver()).getVariable());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AstSerializer.read(new byte[20]));
+    }
+
+    @Test
+    void testSourceEdit() {
+        String source = "LET x: Integer = 1;\nDEF f() DO RETURN x; END\nDEF g() DO RETURN 2; END";
+        ParsedSource parsed = ParsedSource.parse(source);
+        int offset = source.indexOf("RETURN x") + 7;
+        ParsedSource edited = parsed.edit(offset, 1, "y + 1");
+        Assertions.assertEquals(new Parser(edited.getTokens()).parseSource(), edited.getSource());
+        Assertions.assertSame(parsed.getSource().getFields().get(0), edited.getSource().getFields().get(0));
+        Assertions.assertNotSame(parsed.getSource().getMethods().get(0), edited.getSource().getMethods().get(0));
+        Assertions.assertSame(parsed.getSource().getMethods().get(1), edited.getSource().getMethods().get(1));
+        ParseException exception = Assertions.assertThrows(ParseException.class, () -> edited.edit(source.indexOf("END") + 4, 3, ""));
+        Assertions.assertEquals(50, exception.getIndex());
+        Assertions.assertEquals(new Parser(edited.getTokens()).parseSource(), edited.getSource());
+        ParsedSource again = edited.edit(0, 0, "LET z: Integer = 0;\n");
+        Assertions.assertEquals(new Parser(new Lexer(edited.getTokens().getText().toString()).lexBuffer()).parseSource(), again.getSource());
+    }
+
+    @Test
+    void testContentHash() {
+        String source = "LET x: Integer = 1;\nDEF f() DO RETURN x; END\nDEF g() DO RETURN 2; END";
+        ParsedSource parsed = ParsedSource.parse(source);
+        Ast.Source expected = new Parser(new Lexer(source).lexBuffer()).parseSource();
+        Assertions.assertEquals(expected.getContentHash(), parsed.getSource().getContentHash());
+        ParsedSource edited = parsed.edit(source.indexOf("RETURN 2") + 7, 1, "3");
+        Assertions.assertNotEquals(parsed.getSource().getContentHash(), edited.getSource().getContentHash());
+        Assertions.assertEquals(parsed.getSource().getMethods().get(0).getContentHash(), edited.getSource().getMethods().get(0).getContentHash());
+        Assertions.assertNotEquals(parsed.getSource().getMethods().get(1).getContentHash(), edited.getSource().getMethods().get(1).getContentHash());
+        Assertions.assertNotEquals(
+                new Ast.Stmt.Expression(new Ast.Expr.Access(Optional.empty(), "x")).getContentHash(),
+                new Ast.Stmt.Return(new Ast.Expr.Access(Optional.empty(), "x")).getContentHash()
+        );
+    }
+
+    @Test
+    void testSourceRecovering() {
+        String source = "LET x = 1;\nDEF f() DO\n  a = ;\n  b = 1;\nEND\nDEF g( DO END\nDEF h() DO RETURN 1; END";
+        List<ParseException> errors = new ArrayList<>();
+        Ast.Source ast = new Parser(new Lexer(source).lexBuffer()).parseSource(errors);
+        Assertions.assertEquals(new Ast.Source(Arrays.asList(), Arrays.asList(
+                new Ast.Method("f", Arrays.asList(), Arrays.asList(
+                        new Ast.Stmt.Assignment(
+                                new Ast.Expr.Access(Optional.empty(), "b"),
+                                new Ast.Expr.Literal(BigInteger.ONE)
+                        )
+                )),
+                new Ast.Method("h", Arrays.asList(), Arrays.asList(
+                        new Ast.Stmt.Return(new Ast.Expr.Literal(BigInteger.ONE))
+                ))
+        )), ast);
+        Assertions.assertEquals(3, errors.size());
+        Assertions.assertEquals(6, errors.get(0).getIndex());
+        Assertions.assertEquals(28, errors.get(1).getIndex());
+        Assertions.assertEquals(53, errors.get(2).getIndex());
+    }
+
     @ParameterizedTest
     @MethodSource
     void testExpressionStatement(String test, List<Token> tokens, Ast.Stmt.Expression expected) {
@@ -0,0 +1,106 @@
+package plc.project;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Classifies a full vector of characters (16 to 64 bytes, depending on the
+ * hardware) per iteration and jumps to the first one which ends the run. The
+ * remaining tail shorter than a vector is handled by the scalar loop.
+ *
+ * Most runs are only a few characters long, where setting up a vector costs
+ * more than it saves, so the first {@link #PREFIX} characters are always
+ * checked by the scalar loop and vectors are only used for longer runs. The
+ * vector loop is kept in a separate method so the common case stays small
+ * enough to be inlined into the lexer.
+ *
+ * Chars at or above {@code 0x8000} and bytes at or above {@code 0x80} are
+ * negative as lanes, so they never fall inside any of the ASCII ranges below.
+ */
+final class VectorRunScanner extends RunScanner {
+
+    private static final VectorSpecies<Short> CHARS = ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    private static final int PREFIX = 8;
+
+    @Override
+    int scan(char[] chars, int from, int to, int kind) {
+        int i = super.scan(chars, from, Math.min(to, from + PREFIX), kind);
+        return i < from + PREFIX ? i : scanVectors(chars, i, to, kind);
+    }
+
+    private int scanVectors(char[] chars, int i, int to, int kind) {
+        for (int bound = to - CHARS.length(); i <= bound; i += CHARS.length()) {
+            VectorMask<Short> stop = matches(ShortVector.fromCharArray(CHARS, chars, i), kind).not();
+            if (stop.anyTrue()) {
+                return i + stop.firstTrue();
+            }
+        }
+        return super.scan(chars, i, to, kind);
+    }
+
+    @Override
+    int scan(ByteBuffer bytes, int from, int to, int kind) {
+        int i = super.scan(bytes, from, Math.min(to, from + PREFIX), kind);
+        return i < from + PREFIX ? i : scanVectors(bytes, i, to, kind);
+    }
+
+    private int scanVectors(ByteBuffer bytes, int i, int to, int kind) {
+        for (int bound = to - BYTES.length(); i <= bound; i += BYTES.length()) {
+            VectorMask<Byte> stop = matches(ByteVector.fromByteBuffer(BYTES, bytes, i, ByteOrder.nativeOrder()), kind).not();
+            if (stop.anyTrue()) {
+                return i + stop.firstTrue();
+            }
+        }
+        return super.scan(bytes, i, to, kind);
+    }
+
+    private static VectorMask<Short> matches(ShortVector v, int kind) {
+        switch (kind) {
+            case WHITESPACE:
+                return v.eq((short) ' ')
+                        .or(v.eq((short) '\t'))
+                        .or(v.eq((short) '\n'))
+                        .or(v.eq((short) '\r'))
+                        .or(v.eq((short) '\b'));
+            case IDENTIFIER:
+                ShortVector lower = v.lanewise(VectorOperators.OR, (short) 0x20);
+                return lower.compare(VectorOperators.GE, (short) 'a').and(lower.compare(VectorOperators.LE, (short) 'z'))
+                        .or(v.compare(VectorOperators.GE, (short) '0').and(v.compare(VectorOperators.LE, (short) '9')))
+                        .or(v.eq((short) '_'))
+                        .or(v.eq((short) '-'));
+            case DIGIT:
+                return v.compare(VectorOperators.GE, (short) '0').and(v.compare(VectorOperators.LE, (short) '9'));
+            default:
+                throw new AssertionError(kind);
+        }
+    }
+
+    private static VectorMask<Byte> matches(ByteVector v, int kind) {
+        switch (kind) {
+            case WHITESPACE:
+                return v.eq((byte) ' ')
+                        .or(v.eq((byte) '\t'))
+                        .or(v.eq((byte) '\n'))
+                        .or(v.eq((byte) '\r'))
+                        .or(v.eq((byte) '\b'));
+            case IDENTIFIER:
+                ByteVector lower = v.lanewise(VectorOperators.OR, (byte) 0x20);
+                return lower.compare(VectorOperators.GE, (byte) 'a').and(lower.compare(VectorOperators.LE, (byte) 'z'))
+                        .or(v.compare(VectorOperators.GE, (byte) '0').and(v.compare(VectorOperators.LE, (byte) '9')))
+                        .or(v.eq((byte) '_'))
+                        .or(v.eq((byte) '-'));
+            case DIGIT:
+                return v.compare(VectorOperators.GE, (byte) '0').and(v.compare(VectorOperators.LE, (byte) '9'));
+            default:
+                throw new AssertionError(kind);
+        }
+    }
+
+}